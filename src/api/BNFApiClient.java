@@ -1,7 +1,8 @@
 package api;
 
 import java.io.File;
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -9,17 +10,35 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
-import model.Book;
+import model.BnfRecord;
+import model.BookMetadata;
 import model.DetailedBook;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import dao.BookDao;
+import dao.AsyncLibrary;
+import dao.BookRepository;
+import dao.Repositories;
+import util.BoundedCache;
+import util.IsbnValidator;
 
 
 /**
@@ -28,13 +47,47 @@ import dao.BookDao;
  * Cette classe fournit des méthodes pour récupérer les détails des livres
  * en utilisant l'API de la BNF.
  * </p>
+ * <p>
+ * The first record of an ISBN is cached for all the clients, at most
+ * {@code cybook.bnf.cache.size} ISBNs (5000 by default) for {@code cybook.bnf.cache.ttlSeconds}
+ * (one hour by default). ISBNs unknown to the BNF are cached too; failed requests are not.
+ * Concurrent lookups of the same ISBN share one request.
+ * </p>
+ * <p>
+ * Responses are parsed while they are received by {@link SruRecordParser}, without building a document.
+ * </p>
+ * <p>
+ * {@link #fetchRecords(Collection)} looks up many ISBNs with one query per {@code cybook.bnf.batchSize}
+ * ISBNs (20 by default), at most {@code cybook.bnf.maxConcurrency} queries at a time (4 by default).
+ * The address of the SRU service is {@code cybook.bnf.url}, so a local stand-in server can be used for tests.
+ * </p>
  */
 
 
 public class BNFApiClient {
-	
-    private BookDao bookDao = new BookDao();
-    private final HttpClient client = HttpClient.newHttpClient();
+
+    // First record by ISBN, empty when the BNF has no record for the ISBN
+    private static final BoundedCache<String, Optional<BnfRecord>> recordCache = new BoundedCache<>("BnfRecordCache",
+            Integer.getInteger("cybook.bnf.cache.size", 5_000),
+            Integer.getInteger("cybook.bnf.cache.ttlSeconds", 3_600) * 1000L);
+    private static final ConcurrentHashMap<String, CompletableFuture<Optional<BnfRecord>>> inFlight = new ConcurrentHashMap<>();
+    private static final AtomicLong coalesced = new AtomicLong();
+    /** Number of ISBNs combined in one query by {@link #fetchRecords(Collection)}. */
+    public static final int BATCH_SIZE = Math.max(1, Integer.getInteger("cybook.bnf.batchSize", 20));
+    private static final String BASE_URL = System.getProperty("cybook.bnf.url", "http://catalogue.bnf.fr/api/SRU");
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_RECORDS_PER_ISBN = 5; // Bounds the paging of a batch whose ISBNs match many records
+    private static final Semaphore batchPermits = new Semaphore(Math.max(1, Integer.getInteger("cybook.bnf.maxConcurrency", 4)));
+    private static final DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+
+    static {
+        documentFactory.setNamespaceAware(true); // Important for XML documents with namespaces
+    }
+
+    // Shared by all the clients, so creating a client opens no connection and starts no thread
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    private final BookRepository bookDao = Repositories.books();
     
     /**
      * Constructeur par défaut.
@@ -44,172 +97,426 @@ public class BNFApiClient {
     }
 
     /**
-     * Method to fetch book details by ISBN.
+     * Method to fetch book details by ISBN as a DOM document.
+     * The application itself reads the records with {@link #fetchRecord(String)}, which does not build a document.
      * @param isbn The ISBN of the book.
      * @return Document containing the book details.
      */
     public Document fetchBookDetailsByISBN(String isbn) {
-        String query = "bib.isbn adj \"" + isbn + "\"";
-        return fetchDetails(query);
+        try (InputStream body = send(isbnQuery(isbn))) {
+            if (body != null) {
+                return newDocumentBuilder().parse(body);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
     }
 
     /**
-     * Method to search for books with detailed information using a query string.
-     * @param query The search query string.
-     * @return List of DetailedBook objects containing the search results.
+     * Method to check that an ISBN exists in the BNF catalogue.
+     * @param isbn The ISBN of the book.
+     * @return true if the BNF returned at least one record for this ISBN, false otherwise.
      */
-    public List<DetailedBook> searchBooks(String query) {
-        Document doc = fetchDetails(query);
-        if (doc != null) {
-            return extractBooks(doc);
+    public boolean existsInCatalog(String isbn) {
+        Optional<BnfRecord> record = lookupRecord(isbn);
+        return record != null && record.isPresent();
+    }
+
+    /**
+     * Method to fetch the bibliographic metadata of a book from the first BNF record of its ISBN.
+     * @param isbn The ISBN of the book.
+     * @return The metadata, or null if the request failed or the BNF has no titled record for this ISBN.
+     */
+    public BookMetadata fetchMetadata(String isbn) {
+        Optional<BnfRecord> record = lookupRecord(isbn);
+        if (record == null || !record.isPresent() || !record.get().hasTitle()) {
+            return null;
         }
-        return new ArrayList<>();
+        return record.get().toMetadata(isbn, System.currentTimeMillis());
     }
 
     /**
-     * Method to send a request to the BNF API and return the response as a Document.
-     * @param query The query string.
-     * @return Document containing the API response.
+     * Method to fetch the first BNF record of an ISBN with a single request, shared by all its fields.
+     * @param isbn The ISBN of the book.
+     * @return The record, or null if the request failed or the BNF has no record for this ISBN.
      */
-    private Document fetchDetails(String query) {
-        try {
-            String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
-            String url = "http://catalogue.bnf.fr/api/SRU?version=1.2&operation=searchRetrieve&query=" + encodedQuery;
-
-            // Create HTTP request
-            HttpRequest request = HttpRequest.newBuilder()
-                                             .uri(URI.create(url))
-                                             .header("Accept", "application/xml")
-                                             .build();
-
-            // Send HTTP request and get the response
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                // Parse the XML response
-                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                factory.setNamespaceAware(true); // Important for XML documents with namespaces
-                DocumentBuilder builder = factory.newDocumentBuilder();
-                return builder.parse(new InputSource(new StringReader(response.body())));
+    public BnfRecord fetchRecord(String isbn) {
+        Optional<BnfRecord> record = lookupRecord(isbn);
+        return record != null ? record.orElse(null) : null;
+    }
+
+    /**
+     * Method to fetch the first BNF record of many ISBNs. The ISBNs that are not cached are combined
+     * {@link #BATCH_SIZE} at a time into queries joined by OR, which are sent concurrently, and each
+     * record is mapped back to the ISBN it was searched with. This blocks until all the queries completed.
+     * @param isbns The ISBNs of the books.
+     * @return The records by ISBN, without the ISBNs unknown to the BNF or whose query failed.
+     */
+    public Map<String, BnfRecord> fetchRecords(Collection<String> isbns) {
+        Map<String, BnfRecord> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String isbn : new LinkedHashSet<>(isbns)) {
+            Optional<BnfRecord> cached = recordCache.getIfPresent(isbn);
+            if (cached != null) {
+                cached.ifPresent(record -> result.put(isbn, record));
             } else {
-                System.err.println("Request failed: " + response.statusCode());
+                missing.add(isbn);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return null;
+
+        List<CompletableFuture<Map<String, BnfRecord>>> batches = new ArrayList<>();
+        List<String> retry = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < missing.size(); i += BATCH_SIZE) {
+            List<String> batch = missing.subList(i, Math.min(missing.size(), i + BATCH_SIZE));
+            try {
+                batchPermits.acquire(); // The next batch is sent as soon as one of the running ones completes
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            batches.add(fetchBatchAsync(batch, retry).whenComplete((records, error) -> batchPermits.release()));
+        }
+
+        for (CompletableFuture<Map<String, BnfRecord>> batch : batches) {
+            try {
+                result.putAll(batch.join());
+            } catch (CompletionException e) {
+                System.err.println("BNF batch lookup failed: " + e.getCause());
+            }
+        }
+        for (String isbn : retry) {
+            BnfRecord record = fetchRecord(isbn);
+            if (record != null) {
+                result.put(isbn, record);
+            }
+        }
+        return result;
     }
-    
+
     /**
-     * Method to check the availability of a book by ISBN.
-     * @param isbn The ISBN of the book.
-     * @return String indicating the availability status of the book.
+     * Method to send the query of a batch of ISBNs and its following pages, and map the records to the ISBNs.
+     * The found and unknown ISBNs are stored in the record cache.
+     * @param batch The ISBNs, none of them cached.
+     * @param retry The list receiving the ISBNs to look up alone, because the batch could not tell whether they exist.
+     * @return The future records by ISBN.
      */
-    private String checkAvailability(String isbn) {
-        Book book = bookDao.findBookByISBN(isbn);
-        if (book != null) {
-            int stock = book.getStock();
-            if (stock > 0) {
-                return "In stock (" + stock + ")";
-            } else {
-                return "Out of stock";
+    private CompletableFuture<Map<String, BnfRecord>> fetchBatchAsync(List<String> batch, List<String> retry) {
+        StringBuilder query = new StringBuilder();
+        for (String isbn : batch) {
+            if (query.length() > 0) {
+                query.append(" or ");
             }
-        } else {
-            return "Not available";
+            query.append(isbnQuery(isbn));
         }
+        List<BnfRecord> records = Collections.synchronizedList(new ArrayList<>());
+        int maxRecords = batch.size() * MAX_RECORDS_PER_ISBN;
+        return fetchPageAsync(query.toString(), 1, maxRecords, records).thenApply(complete -> {
+            Map<String, String> requestedByKey = new HashMap<>();
+            for (String isbn : batch) {
+                requestedByKey.put(isbnKey(isbn), isbn);
+            }
+            Map<String, BnfRecord> found = new HashMap<>();
+            boolean unmatched = false;
+            for (BnfRecord record : records) {
+                String isbn = requestedByKey.get(isbnKey(record.getIsbn()));
+                if (isbn == null) {
+                    unmatched = true; // Found by another of its ISBNs, or by a form we do not normalize
+                } else {
+                    found.putIfAbsent(isbn, record);
+                }
+            }
+            for (String isbn : batch) {
+                BnfRecord record = found.get(isbn);
+                if (record != null) {
+                    recordCache.put(isbn, Optional.of(record));
+                } else if (complete && !unmatched) {
+                    recordCache.put(isbn, Optional.empty());
+                } else {
+                    retry.add(isbn); // The record may be one we could not map or did not read
+                }
+            }
+            return found;
+        });
     }
 
     /**
-     * Method to extract books from the XML Document and create DetailedBook objects.
-     * @param doc The XML Document containing book details.
-     * @return List of DetailedBook objects extracted from the XML Document.
+     * Method to send one page of a query asynchronously, then the following pages until the last one.
+     * @param query The query string.
+     * @param startRecord The position of the first record of the page, starting at 1.
+     * @param maxRecords The number of records after which the following pages are not requested.
+     * @param records The list receiving the records of all the pages.
+     * @return A future telling whether all the pages were read.
      */
-    private List<DetailedBook> extractBooks(Document doc) {
-        List<DetailedBook> books = new ArrayList<>();
-        NodeList recordNodes = doc.getElementsByTagNameNS("*", "record");
-        for (int i = 0; i < recordNodes.getLength(); i++) {
-            Element record = (Element) recordNodes.item(i);
-            String isbn = extractField(record, "010", 'a');
-            String title = extractField(record, "200", 'a');
-            String author = extractField(record, "700", 'a');
-            String publicationDate = extractField(record, "210", 'd');
-            String edition = extractField(record, "205", 'a');
-            String collection = extractField(record, "225", 'a');
-            String availability = checkAvailability(isbn);
+    private CompletableFuture<Boolean> fetchPageAsync(String query, int startRecord, int maxRecords, List<BnfRecord> records) {
+        return client.sendAsync(newRequest(query, startRecord, PAGE_SIZE), HttpResponse.BodyHandlers.ofInputStream())
+                .thenCompose(response -> {
+                    SruRecordParser.Result page = readPage(response, records::add);
+                    int next = page.getNextRecordPosition();
+                    if (next <= startRecord || page.getRecordCount() == 0) {
+                        return CompletableFuture.completedFuture(true);
+                    }
+                    if (records.size() >= maxRecords) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return fetchPageAsync(query, next, maxRecords, records);
+                });
+    }
 
-            if (title != null && !title.isBlank()) { // Include books with a title even if ISBN is missing
-                books.add(new DetailedBook(isbn, title, author, publicationDate, edition, collection, 0, availability));
+    /**
+     * Method to parse the body of an asynchronous response.
+     * @param response The response.
+     * @param sink The consumer of the records.
+     * @return The paging of the response.
+     * @throws CompletionException If the request failed or the response cannot be parsed.
+     */
+    private static SruRecordParser.Result readPage(HttpResponse<InputStream> response, Consumer<BnfRecord> sink) {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Request failed: " + response.statusCode());
             }
+            return SruRecordParser.parse(body, Integer.MAX_VALUE, sink);
+        } catch (IOException | XMLStreamException e) {
+            throw new CompletionException(e);
         }
-        return books;
     }
 
     /**
-     * Method to extract specific data fields from the UNIMARC data field.
-     * @param record The XML element representing the record.
-     * @param tag The tag of the data field.
-     * @param subfieldCode The code of the subfield.
-     * @return String containing the extracted data.
+     * Method to normalize an ISBN so that its ISBN-10 and ISBN-13 forms, with or without hyphens, are equal.
+     * @param isbn The ISBN.
+     * @return The ISBN-13, or the ISBN without separators if it is not valid.
      */
-    private String extractField(Element record, String tag, char subfieldCode) {
-        NodeList dataFields = record.getElementsByTagNameNS("*", "datafield");
-        for (int i = 0; i < dataFields.getLength(); i++) {
-            Element field = (Element) dataFields.item(i);
-            if (field.getAttribute("tag").equals(tag)) {
-                NodeList subFields = field.getElementsByTagNameNS("*", "subfield");
-                for (int j = 0; j < subFields.getLength(); j++) {
-                    Element subField = (Element) subFields.item(j);
-                    if (subField.getAttribute("code").charAt(0) == subfieldCode) {
-                        return subField.getTextContent().trim();
-                    }
-                }
+    private static String isbnKey(String isbn) {
+        String isbn13 = IsbnValidator.toIsbn13(isbn);
+        return isbn13 != null ? isbn13 : IsbnValidator.normalize(isbn);
+    }
+
+    /**
+     * Method to get the cached first BNF record of an ISBN, fetching it on a miss.
+     * Concurrent misses on the same ISBN wait for the request of the first one.
+     * @param isbn The ISBN of the book.
+     * @return The record, empty if the BNF has no record for this ISBN, or null if the request failed.
+     */
+    private Optional<BnfRecord> lookupRecord(String isbn) {
+        Optional<BnfRecord> cached = recordCache.getIfPresent(isbn);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<Optional<BnfRecord>> request = new CompletableFuture<>();
+        CompletableFuture<Optional<BnfRecord>> running = inFlight.putIfAbsent(isbn, request);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return running.join();
+        }
+        Optional<BnfRecord> record = null;
+        try {
+            BnfRecord[] first = new BnfRecord[1];
+            if (streamRecords(isbnQuery(isbn), 1, parsed -> first[0] = parsed) != null) {
+                record = Optional.ofNullable(first[0]);
+                recordCache.put(isbn, record);
             }
+        } finally {
+            inFlight.remove(isbn);
+            request.complete(record);
         }
-        return ""; // Return an empty string if the information is not found
+        return record;
     }
 
+    /**
+     * Method to get the cache of the BNF records, to read its hit and miss counters.
+     * @return The cache shared by all the clients.
+     */
+    public static BoundedCache<String, Optional<BnfRecord>> getRecordCache() {
+        return recordCache;
+    }
 
     /**
-     * Method to extract title from the XML Document.
-     * @param doc The XML Document containing the title.
-     * @return String containing the title.
+     * Method to get the number of lookups that waited for the request of a concurrent lookup of the same ISBN.
+     * @return The number of coalesced lookups.
      */
-    private String extractTitle(Document doc) {
-        NodeList nodes = doc.getElementsByTagNameNS("*", "subfield");
-        for (int i = 0; i < nodes.getLength(); i++) {
-            if (nodes.item(i).getParentNode().getAttributes().getNamedItem("tag").getNodeValue().equals("200")
-                && nodes.item(i).getAttributes().getNamedItem("code").getNodeValue().equals("a")) {
-                return nodes.item(i).getTextContent();
+    public static long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Method to search for books with detailed information using a query string.
+     * @param query The search query string.
+     * @return List of DetailedBook objects containing the search results.
+     */
+    public List<DetailedBook> searchBooks(String query) {
+        List<BnfRecord> records = new ArrayList<>();
+        streamRecords(query, Integer.MAX_VALUE, records::add);
+        return toDetailedBooks(records);
+    }
+
+    /**
+     * Method to fetch one page of the results of a search without blocking. The availability of the
+     * books is read from the local stock on a background thread once the page is received.
+     * Cancelling the returned future cancels the request.
+     * @param query The search query string.
+     * @param startRecord The position of the first record of the page, starting at 1.
+     * @param maximumRecords The number of records of the page.
+     * @return The future page.
+     */
+    public CompletableFuture<SruSearchSession.Page> searchPageAsync(String query, int startRecord, int maximumRecords) {
+        List<BnfRecord> records = new ArrayList<>();
+        CompletableFuture<HttpResponse<InputStream>> sent = client.sendAsync(newRequest(query, startRecord, maximumRecords),
+                HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<SruSearchSession.Page> page = new CompletableFuture<>();
+        sent.thenApply(response -> readPage(response, records::add))
+            .thenCompose(result -> AsyncLibrary.supply(() -> new SruSearchSession.Page(toDetailedBooks(records), startRecord,
+                    result.getNumberOfRecords(), result.getNextRecordPosition())))
+            .whenComplete((result, error) -> {
+                if (error != null) {
+                    page.completeExceptionally(error);
+                } else {
+                    page.complete(result);
+                }
+            });
+        page.whenComplete((result, error) -> {
+            if (page.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Method to create the DetailedBook objects of the records that have a title.
+     * @param records The records.
+     * @return List of DetailedBook objects with their availability.
+     */
+    private List<DetailedBook> toDetailedBooks(List<BnfRecord> records) {
+        List<DetailedBook> books = new ArrayList<>();
+        // The stock of the whole page is read with one query
+        Set<String> isbns = new HashSet<>();
+        for (BnfRecord record : records) {
+            if (record.hasTitle() && !record.getIsbn().isEmpty()) {
+                isbns.add(record.getIsbn());
+                isbns.add(IsbnValidator.normalize(record.getIsbn())); // The BNF prints the ISBN with hyphens
             }
         }
-        return null;
+        Map<String, Integer> stocks = isbns.isEmpty() ? Collections.emptyMap() : bookDao.getStocks(isbns);
+        for (BnfRecord record : records) {
+            if (record.hasTitle()) { // Include books with a title even if ISBN is missing
+                Integer stock = stocks.get(record.getIsbn());
+                if (stock == null) {
+                    stock = stocks.get(IsbnValidator.normalize(record.getIsbn()));
+                }
+                books.add(new DetailedBook(record.getIsbn(), record.getTitle(), record.getAuthor(), record.getPublicationDate(),
+                        record.getEdition(), record.getCollection(), 0, describeAvailability(stock)));
+            }
+        }
+        return books;
     }
 
     /**
-     * Method to extract author from the XML Document.
-     * @param doc The XML Document containing the author.
-     * @return String containing the author.
+     * Method to send a request to the BNF API and parse the records of the response as they arrive.
+     * @param query The query string.
+     * @param maxRecords The number of records after which the rest of the response is ignored.
+     * @param sink The consumer of the records.
+     * @return The paging of the response, or null if the request failed.
      */
-    private String extractAuthor(Document doc) {
-        NodeList nodes = doc.getElementsByTagNameNS("*", "subfield");
-        for (int i = 0; i < nodes.getLength(); i++) {
-            if (nodes.item(i).getParentNode().getAttributes().getNamedItem("tag").getNodeValue().equals("700")
-                && nodes.item(i).getAttributes().getNamedItem("code").getNodeValue().equals("a")) {
-                return nodes.item(i).getTextContent();
+    private SruRecordParser.Result streamRecords(String query, int maxRecords, Consumer<BnfRecord> sink) {
+        try (InputStream body = send(query)) {
+            if (body != null) {
+                return SruRecordParser.parse(body, maxRecords, sink);
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Method to send a request to the BNF API.
+     * @param query The query string.
+     * @return The body of the response, to be closed by the caller, or null if the request failed.
+     * @throws Exception If the request could not be sent.
+     */
+    private InputStream send(String query) throws Exception {
+        // Send HTTP request, the body is read by the parser as it arrives
+        HttpResponse<InputStream> response = client.send(newRequest(query, 0, 0), HttpResponse.BodyHandlers.ofInputStream());
+
+        if (response.statusCode() == 200) {
+            return response.body();
+        }
+        System.err.println("Request failed: " + response.statusCode());
+        response.body().close();
+        return null;
+    }
+
+    /**
+     * Method to build an SRU searchRetrieve request.
+     * @param query The query string.
+     * @param startRecord The position of the first record to return, starting at 1, or 0 for the server default.
+     * @param maximumRecords The number of records per page, or 0 for the server default.
+     * @return The HTTP request.
+     */
+    private static HttpRequest newRequest(String query, int startRecord, int maximumRecords) {
+        StringBuilder url = new StringBuilder(BASE_URL)
+                .append("?version=1.2&operation=searchRetrieve&query=")
+                .append(URLEncoder.encode(query, StandardCharsets.UTF_8));
+        if (startRecord > 0) {
+            url.append("&startRecord=").append(startRecord);
+        }
+        if (maximumRecords > 0) {
+            url.append("&maximumRecords=").append(maximumRecords);
+        }
+        return HttpRequest.newBuilder()
+                          .uri(URI.create(url.toString()))
+                          .header("Accept", "application/xml")
+                          .build();
+    }
+
+    /**
+     * Method to build the SRU query of an ISBN.
+     * @param isbn The ISBN of the book.
+     * @return The query string.
+     */
+    private static String isbnQuery(String isbn) {
+        return "bib.isbn adj \"" + isbn + "\"";
+    }
+
+    /**
+     * Method to create a namespace-aware DOM parser from the shared factory.
+     * @return The parser.
+     * @throws ParserConfigurationException If the parser cannot be created.
+     */
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        synchronized (documentFactory) {
+            return documentFactory.newDocumentBuilder();
+        }
+    }
+    
+    /**
+     * Method to describe the availability of a book from its stock.
+     * @param stock The stock of the book, or null if the book is not in the local catalogue.
+     * @return String indicating the availability status of the book.
+     */
+    private static String describeAvailability(Integer stock) {
+        if (stock != null) {
+            if (stock > 0) {
+                return "In stock (" + stock + ")";
+            } else {
+                return "Out of stock";
+            }
+        } else {
+            return "Not available";
+        }
+    }
+
     /**
      * Method to fetch title by ISBN.
      * @param isbn The ISBN of the book.
      * @return String containing the title of the book.
+     * @deprecated Use {@link #fetchRecord(String)}, which gives all the fields of the record at once.
      */
+    @Deprecated
     public String fetchTitle(String isbn) {
-        Document bookData = fetchBookDetailsByISBN(isbn);
-        if (bookData != null) {
-            return extractTitle(bookData);
+        Optional<BnfRecord> record = lookupRecord(isbn);
+        if (record != null) {
+            return record.map(BnfRecord::getTitle).orElse(null);
         } else {
             return "Titre non disponible";
         }
@@ -219,11 +526,13 @@ public class BNFApiClient {
      * Method to fetch author by ISBN.
      * @param isbn The ISBN of the book.
      * @return String containing the author of the book.
+     * @deprecated Use {@link #fetchRecord(String)}, which gives all the fields of the record at once.
      */
+    @Deprecated
     public String fetchAuthor(String isbn) {
-        Document bookData = fetchBookDetailsByISBN(isbn);
-        if (bookData != null) {
-            return extractAuthor(bookData);
+        Optional<BnfRecord> record = lookupRecord(isbn);
+        if (record != null) {
+            return record.map(BnfRecord::getAuthor).orElse(null);
         } else {
             return "Auteur non disponible";
         }
@@ -237,10 +546,7 @@ public class BNFApiClient {
     public Document readLocalXMLFile(String filePath) {
         try {
             File file = new File(filePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true); // Important for XML documents with namespaces
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(file);
+            return newDocumentBuilder().parse(file);
         } catch (Exception e) {
             e.printStackTrace();
         }
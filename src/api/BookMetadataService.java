@@ -0,0 +1,381 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dao.AsyncLibrary;
+import dao.BookMetadataRepository;
+import dao.Repositories;
+import model.BnfRecord;
+import model.BookMetadata;
+import model.MetadataSource;
+import util.BoundedCache;
+
+/**
+ * Local source of the bibliographic metadata of the books, so displaying a book never waits for the BNF.
+ * The application sets it as the {@link MetadataSource} of the books at startup.
+ * <p>
+ * Metadata is read from the {@code book_metadata} table through a memory cache. It is written once
+ * when a book is added with {@link #fetchAndStore(String)}. A book whose metadata is missing, for
+ * example one added before the table existed, is queued for a fetch on a single background thread
+ * and reads as null until then. The same thread refreshes the metadata older than
+ * {@code cybook.metadata.maxAgeDays} (30 by default) every {@code cybook.metadata.refreshHours}
+ * (24 by default), {@value #REFRESH_BATCH} books at a time. Fetches of many books use the batched
+ * lookup of {@link BNFApiClient#fetchRecords(Collection)}.
+ * </p>
+ * <p>
+ * The asynchronous methods read the database through {@link AsyncLibrary}, but wait for the BNF on
+ * their own {@code cybook.bnf.maxConcurrency} threads (4 by default), so a slow BNF never holds one
+ * of the permits sized on the connection pool.
+ * </p>
+ */
+public final class BookMetadataService implements MetadataSource {
+
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(Integer.getInteger("cybook.metadata.maxAgeDays", 30));
+    private static final long REFRESH_PERIOD_HOURS = Integer.getInteger("cybook.metadata.refreshHours", 24);
+    private static final int REFRESH_BATCH = 200;
+    private static final int CACHE_SIZE = 10_000;
+    private static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long WAIT_TIMEOUT_SECONDS = 60; // Bounds the wait of getAsync for a fetch that could not be observed
+    private static final int FETCH_THREADS = Math.max(1, Integer.getInteger("cybook.bnf.maxConcurrency", 4));
+
+    private static final BookMetadataService instance = new BookMetadataService(new BNFApiClient(), Repositories.metadata());
+
+    private final BNFApiClient apiClient;
+    private final BookMetadataRepository repository;
+    private final BoundedCache<String, Optional<BookMetadata>> cache = new BoundedCache<>("MetadataCache", CACHE_SIZE, CACHE_TTL_MILLIS);
+    private final Set<String> queued = ConcurrentHashMap.newKeySet(); // ISBNs waiting for a background fetch
+    private final Map<String, CompletableFuture<BookMetadata>> waiters = new ConcurrentHashMap<>(); // getAsync calls waiting for a fetch
+    private final ScheduledExecutorService worker;
+    private final ExecutorService fetchers; // BNF requests of the asynchronous methods
+
+    private BookMetadataService(BNFApiClient apiClient, BookMetadataRepository repository) {
+        this.apiClient = apiClient;
+        this.repository = repository;
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cybook-metadata");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fetchers = Executors.newFixedThreadPool(FETCH_THREADS, r -> {
+            Thread thread = new Thread(r, "cybook-bnf-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the shared service.
+     *
+     * @return The service.
+     */
+    public static BookMetadataService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the stored metadata of a book without any network request.
+     * If it is not stored, a background fetch is queued.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The metadata, or null if it is not stored yet.
+     */
+    @Override
+    public BookMetadata get(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        Optional<BookMetadata> metadata = cache.get(isbn, key -> Optional.ofNullable(repository.findMetadata(key)));
+        if (!metadata.isPresent()) {
+            queueFetch(isbn);
+        }
+        return metadata.orElse(null);
+    }
+
+    /**
+     * Gets the metadata of a book without blocking. A cached value is returned at once; otherwise the
+     * stored metadata is read on a background thread, and if it is not stored the future completes
+     * when the queued BNF fetch is done.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The future metadata, null if the BNF has no record for the book or could not be reached.
+     */
+    public CompletableFuture<BookMetadata> getAsync(String isbn) {
+        if (isbn == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Optional<BookMetadata> cached = cache.getIfPresent(isbn);
+        if (cached != null && cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        return AsyncLibrary.supply(() -> {
+            // Registered before the lookup, so a fetch completing in between is not missed
+            CompletableFuture<BookMetadata> waiter = waiters.compute(isbn, (key, existing) -> existing != null && !existing.isDone()
+                    ? existing : new CompletableFuture<BookMetadata>().completeOnTimeout(null, WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            BookMetadata metadata = get(isbn);
+            if (metadata != null) {
+                completeWaiter(isbn, metadata);
+                return CompletableFuture.completedFuture(metadata);
+            }
+            return waiter;
+        }).thenCompose(waiter -> waiter);
+    }
+
+    /**
+     * Gets the stored metadata of many books with one batched lookup, and loads it into the cache.
+     * A background fetch is queued for the books whose metadata is not stored.
+     *
+     * @param isbns The ISBNs of the books.
+     * @return The metadata by ISBN, without the books whose metadata is not stored yet.
+     */
+    public Map<String, BookMetadata> getAll(Collection<String> isbns) {
+        Map<String, BookMetadata> result = new HashMap<>();
+        queueFetch(lookupStored(isbns, result));
+        return result;
+    }
+
+    /**
+     * Gets the metadata of many books without blocking. The stored metadata is read with one batched
+     * lookup through {@link AsyncLibrary}, then the books whose metadata is not stored are fetched from
+     * the BNF with one batched query on a BNF thread, unless a fetch is already queued for them, in
+     * which case it is waited for. Several calls run in parallel, so a long list is best split into
+     * batches of {@link BNFApiClient#BATCH_SIZE} ISBNs whose results can be used as they complete.
+     *
+     * @param isbns The ISBNs of the books.
+     * @return The future metadata by ISBN, without the books the BNF has no record for.
+     */
+    public CompletableFuture<Map<String, BookMetadata>> getAllAsync(Collection<String> isbns) {
+        Map<String, BookMetadata> result = new HashMap<>();
+        return AsyncLibrary.supply(() -> lookupStored(isbns, result))
+                .thenCompose(unknown -> fetchMissing(unknown, result));
+    }
+
+    /**
+     * Fetches from the BNF, without blocking, the metadata of a book and stores it.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The future metadata, null if the BNF has no record for this ISBN or could not be reached.
+     */
+    public CompletableFuture<BookMetadata> fetchAndStoreAsync(String isbn) {
+        return CompletableFuture.supplyAsync(() -> fetchAndStore(isbn), fetchers);
+    }
+
+    /**
+     * Fetches the metadata of a book from the BNF and stores it. This makes a network request.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The metadata, or null if the BNF has no record for this ISBN or could not be reached.
+     */
+    public BookMetadata fetchAndStore(String isbn) {
+        BookMetadata metadata = null;
+        try {
+            metadata = apiClient.fetchMetadata(isbn);
+            if (metadata != null) {
+                repository.saveMetadata(metadata);
+                cache.put(isbn, Optional.of(metadata));
+            }
+        } finally {
+            completeWaiter(isbn, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Fetches the metadata of many books from the BNF with batched queries and stores it.
+     *
+     * @param isbns The ISBNs of the books.
+     * @return The number of books whose metadata was stored.
+     */
+    public int fetchAndStoreAll(Collection<String> isbns) {
+        return fetchAndStoreRecords(isbns).size();
+    }
+
+    /**
+     * Starts the periodic refresh of the missing and old metadata. The first run starts after a minute.
+     */
+    public void startBackgroundRefresh() {
+        worker.scheduleWithFixedDelay(this::refreshStale, 1, TimeUnit.HOURS.toMinutes(REFRESH_PERIOD_HOURS), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Fetches again the metadata that is missing or older than the maximum age.
+     *
+     * @return The number of books refreshed.
+     */
+    int refreshStale() {
+        int refreshed = 0;
+        try {
+            refreshed = fetchAndStoreAll(repository.findStaleIsbns(System.currentTimeMillis() - MAX_AGE_MILLIS, REFRESH_BATCH));
+            System.out.println("Book metadata refreshed for " + refreshed + " book(s). " + cache);
+        } catch (RuntimeException e) {
+            System.err.println("Error refreshing book metadata: " + e.getMessage());
+        }
+        return refreshed;
+    }
+
+    /**
+     * Reads the cached or stored metadata of many books with one batched lookup, and loads it into the cache.
+     *
+     * @param isbns  The ISBNs of the books.
+     * @param result The map receiving the metadata found, by ISBN.
+     * @return The ISBNs whose metadata is not stored, including the ones already known to be missing.
+     */
+    private List<String> lookupStored(Collection<String> isbns, Map<String, BookMetadata> result) {
+        List<String> missing = new ArrayList<>();
+        List<String> unknown = new ArrayList<>(); // Asked again even when known to be missing: the BNF client caches its negative answers
+        for (String isbn : isbns) {
+            Optional<BookMetadata> cached = cache.getIfPresent(isbn);
+            if (cached == null) {
+                missing.add(isbn);
+            } else if (cached.isPresent()) {
+                result.put(isbn, cached.get());
+            } else {
+                unknown.add(isbn);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, BookMetadata> stored = repository.findMetadata(missing);
+            for (String isbn : missing) {
+                BookMetadata metadata = stored.get(isbn);
+                cache.put(isbn, Optional.ofNullable(metadata));
+                if (metadata != null) {
+                    result.put(isbn, metadata);
+                } else {
+                    unknown.add(isbn);
+                }
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * Fetches on a BNF thread the metadata of the books not already queued, and waits for the queued ones.
+     *
+     * @param isbns  The ISBNs whose metadata is not stored.
+     * @param result The map receiving the metadata fetched, by ISBN.
+     * @return The future map, completed once every book is fetched or waited for.
+     */
+    private CompletableFuture<Map<String, BookMetadata>> fetchMissing(List<String> isbns, Map<String, BookMetadata> result) {
+        List<String> claimed = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (String isbn : isbns) {
+            if (queued.add(isbn)) {
+                claimed.add(isbn);
+            } else {
+                pending.add(getAsync(isbn).thenAccept(metadata -> {
+                    if (metadata != null) {
+                        synchronized (result) {
+                            result.put(isbn, metadata);
+                        }
+                    }
+                }));
+            }
+        }
+        if (!claimed.isEmpty()) {
+            pending.add(CompletableFuture.runAsync(() -> {
+                try {
+                    Map<String, BookMetadata> fetched = fetchAndStoreRecords(claimed);
+                    synchronized (result) {
+                        result.putAll(fetched);
+                    }
+                } finally {
+                    queued.removeAll(claimed);
+                }
+            }, fetchers));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).thenApply(done -> result);
+    }
+
+    /**
+     * Fetches the metadata of many books from the BNF with batched queries, stores it and completes
+     * the {@link #getAsync(String)} calls waiting for it.
+     *
+     * @param isbns The ISBNs of the books.
+     * @return The metadata stored, by ISBN.
+     */
+    private Map<String, BookMetadata> fetchAndStoreRecords(Collection<String> isbns) {
+        long fetchedAt = System.currentTimeMillis();
+        Map<String, BookMetadata> stored = new HashMap<>();
+        try {
+            for (Map.Entry<String, BnfRecord> entry : apiClient.fetchRecords(isbns).entrySet()) {
+                if (entry.getValue().hasTitle()) {
+                    BookMetadata metadata = entry.getValue().toMetadata(entry.getKey(), fetchedAt);
+                    repository.saveMetadata(metadata);
+                    cache.put(entry.getKey(), Optional.of(metadata));
+                    stored.put(entry.getKey(), metadata);
+                }
+            }
+        } finally {
+            for (String isbn : isbns) {
+                completeWaiter(isbn, stored.get(isbn));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Completes the {@link #getAsync(String)} calls waiting for the metadata of a book.
+     *
+     * @param isbn     The ISBN of the book.
+     * @param metadata The metadata, or null if it could not be fetched.
+     */
+    private void completeWaiter(String isbn, BookMetadata metadata) {
+        CompletableFuture<BookMetadata> waiter = waiters.remove(isbn);
+        if (waiter != null) {
+            waiter.complete(metadata);
+        }
+    }
+
+    /**
+     * Queues a background fetch of the metadata of a book, unless one is already queued.
+     *
+     * @param isbn The ISBN of the book.
+     */
+    private void queueFetch(String isbn) {
+        if (queued.add(isbn)) {
+            worker.execute(() -> {
+                try {
+                    fetchAndStore(isbn);
+                } finally {
+                    queued.remove(isbn);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues one background batched fetch of the metadata of the books that are not already queued.
+     *
+     * @param isbns The ISBNs of the books.
+     */
+    private void queueFetch(List<String> isbns) {
+        List<String> batch = new ArrayList<>();
+        for (String isbn : isbns) {
+            if (queued.add(isbn)) {
+                batch.add(isbn);
+            }
+        }
+        if (!batch.isEmpty()) {
+            worker.execute(() -> {
+                try {
+                    fetchAndStoreAll(batch);
+                } finally {
+                    queued.removeAll(batch);
+                }
+            });
+        }
+    }
+}
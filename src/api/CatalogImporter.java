@@ -0,0 +1,258 @@
+package api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dao.BookRepository;
+import model.BnfRecord;
+import util.IsbnValidator;
+
+/**
+ * Bulk ingestion of a delivery of books into the local stock.
+ * <p>
+ * The importer reads a text file with one ISBN or EAN-13 barcode per line, rejects malformed
+ * ISBNs locally, checks the distinct remaining ones against the BNF catalogue with batched
+ * queries and a bounded number of concurrent requests, and writes the stock with batched upserts through
+ * {@link BookRepository#addStock(Map)}. Blank lines and lines starting with {@code #} are ignored.
+ * </p>
+ */
+public class CatalogImporter {
+
+    /**
+     * Receives the progress of an import. It is called from the importing thread.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each checked ISBN and once more when the import is finished.
+         *
+         * @param progress The current progress.
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * Snapshot of the progress of an import.
+     */
+    public static final class Progress {
+        private final int total;
+        private final int checked;
+        private final int accepted;
+        private final int rejected;
+        private final int copiesWritten;
+        private final long elapsedMillis;
+        private final boolean finished;
+
+        Progress(int total, int checked, int accepted, int rejected, int copiesWritten, long elapsedMillis, boolean finished) {
+            this.total = total;
+            this.checked = checked;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.copiesWritten = copiesWritten;
+            this.elapsedMillis = elapsedMillis;
+            this.finished = finished;
+        }
+
+        /** @return The number of distinct ISBNs to check. */
+        public int getTotal() { return total; }
+
+        /** @return The number of distinct ISBNs checked so far. */
+        public int getChecked() { return checked; }
+
+        /** @return The number of distinct ISBNs found in the BNF catalogue. */
+        public int getAccepted() { return accepted; }
+
+        /** @return The number of ISBNs rejected as malformed or unknown to the BNF. */
+        public int getRejected() { return rejected; }
+
+        /** @return The number of copies added to the stock so far. */
+        public int getCopiesWritten() { return copiesWritten; }
+
+        /** @return The time since the start of the import, in milliseconds. */
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        /** @return True if this is the final report of the import. */
+        public boolean isFinished() { return finished; }
+
+        /** @return The number of ISBNs checked per second. */
+        public double getThroughput() {
+            return elapsedMillis == 0 ? 0 : checked * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d ISBN checked (%d accepted, %d rejected), %d copies added, %.1f ISBN/s",
+                    checked, total, accepted, rejected, copiesWritten, getThroughput());
+        }
+    }
+
+    private final BNFApiClient apiClient;
+    private final BookRepository bookDao;
+    private final int parallelism;
+    private final int batchSize;
+
+    /**
+     * Creates an importer.
+     *
+     * @param apiClient   The client used to check the ISBNs against the BNF.
+     * @param bookDao     The repository used to write the stock.
+     * @param parallelism The maximum number of concurrent BNF requests.
+     * @param batchSize   The number of distinct ISBNs written per batch.
+     */
+    public CatalogImporter(BNFApiClient apiClient, BookRepository bookDao, int parallelism, int batchSize) {
+        this.apiClient = apiClient;
+        this.bookDao = bookDao;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Imports a file of ISBNs or barcodes. A line repeated n times adds n copies. The ISBNs are stored as ISBN-13.
+     *
+     * @param file     The file to import.
+     * @param listener The listener receiving the progress, or null.
+     * @return The final progress of the import.
+     * @throws IOException if the file cannot be read.
+     */
+    public Progress importFile(Path file, ProgressListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, Integer> copies = new LinkedHashMap<>();
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String isbn = IsbnValidator.toIsbn13(line); // ISBN-10 and ISBN-13 of a book count as one
+                if (isbn != null) {
+                    copies.merge(isbn, 1, Integer::sum);
+                } else {
+                    malformed++;
+                    System.err.println("Import: malformed ISBN skipped: " + line);
+                }
+            }
+        }
+        return importIsbns(copies, malformed, start, listener);
+    }
+
+    /**
+     * Checks the ISBNs against the BNF and writes the accepted ones in batches.
+     *
+     * @param copies    The number of copies to add, by ISBN-13.
+     * @param malformed The number of lines already rejected as malformed.
+     * @param start     The start time of the import.
+     * @param listener  The listener receiving the progress, or null.
+     * @return The final progress of the import.
+     */
+    private Progress importIsbns(Map<String, Integer> copies, int malformed, long start, ProgressListener listener) {
+        int total = copies.size();
+        int accepted = 0;
+        int rejected = malformed;
+        AtomicInteger copiesWritten = new AtomicInteger();
+        Map<String, Integer> batch = new LinkedHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "cybook-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Each task checks BNFApiClient.BATCH_SIZE ISBNs with one batched query
+            CompletionService<Map<String, Boolean>> lookups = new ExecutorCompletionService<>(executor);
+            List<String> isbns = new ArrayList<>(copies.keySet());
+            int chunks = 0;
+            for (int i = 0; i < total; i += BNFApiClient.BATCH_SIZE) {
+                List<String> chunk = isbns.subList(i, Math.min(total, i + BNFApiClient.BATCH_SIZE));
+                lookups.submit(() -> checkCatalog(chunk));
+                chunks++;
+            }
+
+            int checked = 0;
+            for (int c = 0; c < chunks; c++) {
+                Map<String, Boolean> results;
+                try {
+                    results = lookups.take().get();
+                } catch (ExecutionException e) {
+                    System.err.println("Import: BNF lookup failed: " + e.getCause());
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                for (Map.Entry<String, Boolean> result : results.entrySet()) {
+                    checked++;
+                    String isbn = result.getKey();
+                    if (result.getValue()) {
+                        accepted++;
+                        batch.put(isbn, copies.get(isbn));
+                        if (batch.size() >= batchSize) {
+                            flush(batch, copiesWritten);
+                        }
+                    } else {
+                        rejected++;
+                    }
+                    if (listener != null) {
+                        listener.onProgress(new Progress(total, checked, accepted, rejected, copiesWritten.get(),
+                                System.currentTimeMillis() - start, false));
+                    }
+                }
+            }
+            flush(batch, copiesWritten);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Progress result = new Progress(total, accepted + rejected - malformed, accepted, rejected, copiesWritten.get(),
+                System.currentTimeMillis() - start, true);
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks a chunk of ISBNs against the BNF catalogue. An ISBN whose lookup failed is not found.
+     *
+     * @param isbns The ISBNs.
+     * @return Whether each ISBN exists in the catalogue, in the order of the chunk.
+     */
+    private Map<String, Boolean> checkCatalog(List<String> isbns) {
+        Map<String, BnfRecord> found = apiClient.fetchRecords(isbns);
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        for (String isbn : isbns) {
+            results.put(isbn, found.containsKey(isbn));
+        }
+        return results;
+    }
+
+    /**
+     * Writes the pending batch and clears it.
+     *
+     * @param batch         The pending copies by ISBN.
+     * @param copiesWritten The counter of copies written.
+     */
+    private void flush(Map<String, Integer> batch, AtomicInteger copiesWritten) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (bookDao.addStock(batch) == batch.size()) {
+            copiesWritten.addAndGet(batch.values().stream().mapToInt(Integer::intValue).sum());
+        }
+        batch.clear();
+    }
+}
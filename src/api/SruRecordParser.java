@@ -0,0 +1,222 @@
+package api;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import model.BnfRecord;
+
+/**
+ * Single-pass streaming parser of the SRU responses of the BNF in the UNIMARC format.
+ * <p>
+ * The response is read as a stream of XML events, without building a document. Only the data fields
+ * 010, 200, 205, 210, 225 and 700 are looked at, and only the text of the subfields we use is read.
+ * Each record is handed to the caller as soon as its end tag is read. When several occurrences of a
+ * field or subfield exist, the first one is kept.
+ * </p>
+ * <p>
+ * The parser is stateless and can be used by several threads. DTDs and external entities are disabled.
+ * </p>
+ */
+public final class SruRecordParser {
+
+    private static final XMLInputFactory factory = createFactory();
+
+    private SruRecordParser() {
+        // Static parser
+    }
+
+    /**
+     * Paging information of a parsed response.
+     */
+    public static final class Result {
+        private final int recordCount;
+        private final int numberOfRecords;
+        private final int nextRecordPosition;
+
+        Result(int recordCount, int numberOfRecords, int nextRecordPosition) {
+            this.recordCount = recordCount;
+            this.numberOfRecords = numberOfRecords;
+            this.nextRecordPosition = nextRecordPosition;
+        }
+
+        /**
+         * Gets the number of records handed to the consumer.
+         *
+         * @return The number of records parsed.
+         */
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Gets the total number of records matching the query, over all the pages.
+         *
+         * @return The number of matching records, or -1 if it was not read.
+         */
+        public int getNumberOfRecords() {
+            return numberOfRecords;
+        }
+
+        /**
+         * Gets the position of the first record of the next page.
+         *
+         * @return The position, starting at 1, or 0 if this is the last page or it was not read.
+         */
+        public int getNextRecordPosition() {
+            return nextRecordPosition;
+        }
+    }
+
+    /**
+     * Parses an SRU response and hands each of its records to a consumer.
+     * The stream is read up to the end of the last wanted record; it is not closed.
+     *
+     * @param in         The response body.
+     * @param maxRecords The number of records after which parsing stops.
+     * @param sink       The consumer of the records, called in document order.
+     * @return The number of records handed to the consumer and the paging of the response.
+     * @throws XMLStreamException If the response is not well-formed XML.
+     */
+    public static Result parse(InputStream in, int maxRecords, Consumer<BnfRecord> sink) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        int count = 0;
+        int numberOfRecords = -1;
+        int nextRecordPosition = 0;
+        try {
+            RecordBuilder current = null;
+            char wantedCode = 0; // Subfield code wanted in the current data field, 0 if the field is not used
+            String currentTag = null;
+            while (count < maxRecords && reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (current == null && "numberOfRecords".equals(name)) {
+                        numberOfRecords = parseInt(reader.getElementText(), -1);
+                    } else if (current == null && "nextRecordPosition".equals(name)) {
+                        nextRecordPosition = parseInt(reader.getElementText(), 0);
+                    } else if ("record".equals(name)) {
+                        // The SRU record wraps the UNIMARC record, which has the same local name: keep the innermost
+                        current = new RecordBuilder();
+                    } else if (current != null && "datafield".equals(name)) {
+                        currentTag = reader.getAttributeValue(null, "tag");
+                        wantedCode = current.wantedCode(currentTag);
+                    } else if (wantedCode != 0 && "subfield".equals(name)) {
+                        String code = reader.getAttributeValue(null, "code");
+                        if (code != null && code.length() == 1 && code.charAt(0) == wantedCode) {
+                            current.set(currentTag, reader.getElementText().trim());
+                            wantedCode = 0;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("datafield".equals(name)) {
+                        wantedCode = 0;
+                        currentTag = null;
+                    } else if ("record".equals(name) && current != null) {
+                        sink.accept(current.build());
+                        count++;
+                        current = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new Result(count, numberOfRecords, nextRecordPosition);
+    }
+
+    private static int parseInt(String text, int defaultValue) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Creates the shared factory, with DTDs and external entities disabled.
+     *
+     * @return The factory.
+     */
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return inputFactory;
+    }
+
+    /**
+     * Fields of the record being read.
+     */
+    private static final class RecordBuilder {
+        String isbn;
+        String title;
+        String author;
+        String edition;
+        String publicationDate;
+        String collection;
+
+        /**
+         * Gets the subfield code to read in a data field.
+         *
+         * @param tag The tag of the data field.
+         * @return The code, or 0 if the field is not used or was already read.
+         */
+        char wantedCode(String tag) {
+            if (tag == null) {
+                return 0;
+            }
+            switch (tag) {
+                case "010":
+                    return isbn == null ? 'a' : 0;
+                case "200":
+                    return title == null ? 'a' : 0;
+                case "205":
+                    return edition == null ? 'a' : 0;
+                case "210":
+                    return publicationDate == null ? 'd' : 0;
+                case "225":
+                    return collection == null ? 'a' : 0;
+                case "700":
+                    return author == null ? 'a' : 0;
+                default:
+                    return 0;
+            }
+        }
+
+        void set(String tag, String value) {
+            switch (tag) {
+                case "010":
+                    isbn = value;
+                    break;
+                case "200":
+                    title = value;
+                    break;
+                case "205":
+                    edition = value;
+                    break;
+                case "210":
+                    publicationDate = value;
+                    break;
+                case "225":
+                    collection = value;
+                    break;
+                case "700":
+                    author = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        BnfRecord build() {
+            return new BnfRecord(isbn, title, author, edition, publicationDate, collection);
+        }
+    }
+}
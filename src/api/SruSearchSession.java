@@ -0,0 +1,220 @@
+package api;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import model.DetailedBook;
+
+/**
+ * Paged search of the BNF catalogue, fetched page by page as the results are displayed.
+ * <p>
+ * {@link #nextPage()} gives the next page of results and {@link #prefetch()} starts requesting the
+ * page after it, so it is usually received before it is needed. A session that is superseded by a
+ * new search is {@link #cancel() cancelled}: its pending requests are cancelled and its futures fail
+ * with a {@link CancellationException}. The methods can be called from any thread.
+ * </p>
+ */
+public final class SruSearchSession {
+
+    /** Number of records per page, unless another size is given. */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * A page of results.
+     */
+    public static final class Page {
+        private final List<DetailedBook> books;
+        private final int startRecord;
+        private final int numberOfRecords;
+        private final int nextRecordPosition;
+
+        /**
+         * Constructs a page.
+         *
+         * @param books              The books of the page that have a title.
+         * @param startRecord        The position of the first record of the page, starting at 1.
+         * @param numberOfRecords    The total number of records of the search, or -1 if unknown.
+         * @param nextRecordPosition The position of the first record of the next page, or 0 if this is the last page.
+         */
+        public Page(List<DetailedBook> books, int startRecord, int numberOfRecords, int nextRecordPosition) {
+            this.books = List.copyOf(books);
+            this.startRecord = startRecord;
+            this.numberOfRecords = numberOfRecords;
+            this.nextRecordPosition = nextRecordPosition;
+        }
+
+        /**
+         * Gets the books of the page.
+         *
+         * @return The books, without the records that have no title.
+         */
+        public List<DetailedBook> getBooks() {
+            return books;
+        }
+
+        /**
+         * Gets the position of the first record of the page.
+         *
+         * @return The position, starting at 1.
+         */
+        public int getStartRecord() {
+            return startRecord;
+        }
+
+        /**
+         * Gets the total number of records of the search.
+         *
+         * @return The number of records, or -1 if the BNF did not give it.
+         */
+        public int getNumberOfRecords() {
+            return numberOfRecords;
+        }
+
+        /**
+         * Tells whether this is the last page of the search.
+         *
+         * @return true if there is no next page.
+         */
+        public boolean isLast() {
+            return nextRecordPosition <= startRecord;
+        }
+    }
+
+    private final BNFApiClient apiClient;
+    private final String query;
+    private final int pageSize;
+
+    // Guarded by this
+    private int nextStart = 1; // Position of the first record of the next page to request
+    private int numberOfRecords = -1; // Known once a page was received
+    private boolean lastPageRequested;
+    private boolean cancelled;
+    private CompletableFuture<Page> prefetched; // Next page, requested before it was asked for
+    private CompletableFuture<Page> pending; // Page handed out by nextPage() and not received yet
+
+    /**
+     * Creates a session. No request is sent before the first call to {@link #nextPage()}.
+     *
+     * @param apiClient The client used to send the requests.
+     * @param query     The SRU query.
+     * @param pageSize  The number of records per page.
+     */
+    public SruSearchSession(BNFApiClient apiClient, String query, int pageSize) {
+        this.apiClient = apiClient;
+        this.query = query;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Gets the next page, from the prefetched one if it was requested.
+     *
+     * @return The future page, failed with a {@link CancellationException} if the session is cancelled,
+     *         or null if all the pages were already requested.
+     */
+    public synchronized CompletableFuture<Page> nextPage() {
+        if (cancelled) {
+            return CompletableFuture.failedFuture(new CancellationException("Search cancelled"));
+        }
+        CompletableFuture<Page> page = prefetched != null ? prefetched : request();
+        prefetched = null;
+        pending = page;
+        return page;
+    }
+
+    /**
+     * Starts requesting the page after the ones already requested, unless it is requested or it does not exist.
+     */
+    public synchronized void prefetch() {
+        if (!cancelled && prefetched == null && canRequest()) {
+            prefetched = request();
+        }
+    }
+
+    /**
+     * Tells whether {@link #nextPage()} has a page left to give.
+     *
+     * @return true if a page was prefetched, remains to request, or if the number of results is not known yet.
+     */
+    public synchronized boolean hasMore() {
+        return !cancelled && (prefetched != null || canRequest());
+    }
+
+    /**
+     * Gets the total number of results.
+     *
+     * @return The number of records of the search, or -1 before the first page is received.
+     */
+    public synchronized int getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * Cancels the session and its pending requests.
+     */
+    public void cancel() {
+        CompletableFuture<Page> toCancel1;
+        CompletableFuture<Page> toCancel2;
+        synchronized (this) {
+            cancelled = true;
+            toCancel1 = prefetched;
+            toCancel2 = pending;
+            prefetched = null;
+            pending = null;
+        }
+        if (toCancel1 != null) {
+            toCancel1.cancel(true);
+        }
+        if (toCancel2 != null) {
+            toCancel2.cancel(true);
+        }
+    }
+
+    /**
+     * Tells whether the session was cancelled.
+     *
+     * @return true if the session was cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Requests the next page that was not requested yet.
+     *
+     * @return The future page, or null if all the pages were requested.
+     */
+    private CompletableFuture<Page> request() {
+        if (!canRequest()) {
+            return null;
+        }
+        int start = nextStart;
+        nextStart += pageSize;
+        CompletableFuture<Page> page = apiClient.searchPageAsync(query, start, pageSize);
+        page.thenAccept(this::received);
+        return page;
+    }
+
+    /**
+     * Tells whether a page remains to request.
+     *
+     * @return true if the last page was not requested.
+     */
+    private boolean canRequest() {
+        return !lastPageRequested && (numberOfRecords < 0 || nextStart <= numberOfRecords);
+    }
+
+    /**
+     * Records the paging of a received page.
+     *
+     * @param page The page.
+     */
+    private synchronized void received(Page page) {
+        if (page.getNumberOfRecords() >= 0) {
+            numberOfRecords = page.getNumberOfRecords();
+        }
+        if (page.isLast()) {
+            lastPageRequested = true;
+        }
+    }
+}
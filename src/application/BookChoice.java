@@ -0,0 +1,48 @@
+package application;
+
+/**
+ * Book offered in the type-ahead search of the books in stock, with the title it had when it was indexed.
+ * The title is captured in the background, so showing a choice on the JavaFX Application Thread never
+ * reads the metadata of the book.
+ */
+public class BookChoice {
+
+    private final String isbn; // ISBN of the book
+    private final String title; // Title of the book when indexed
+    private final String text; // Formatted once, shown in the field and its suggestions
+
+    /**
+     * Constructor to create the choice of a book.
+     *
+     * @param isbn  The ISBN of the book.
+     * @param title The title of the book, or null if it is not known yet.
+     */
+    public BookChoice(String isbn, String title) {
+        this.isbn = isbn;
+        this.title = title;
+        this.text = title != null ? isbn + " - " + title : isbn;
+    }
+
+    /**
+     * Gets the ISBN of the book.
+     *
+     * @return The ISBN.
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the title of the book when it was indexed.
+     *
+     * @return The title, or null if it was not known yet.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
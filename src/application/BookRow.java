@@ -0,0 +1,126 @@
+package application;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.SimpleStringProperty;
+
+import api.BookMetadataService;
+import dao.AsyncLibrary;
+import model.Book;
+import model.BookMetadata;
+
+/**
+ * Row of a table of books, with the title and author as observable properties.
+ * <p>
+ * The properties are created the first time a cell asks for them, so only the rows that are displayed
+ * resolve their metadata. They show a placeholder until the metadata is read from
+ * {@link BookMetadataService} in the background, then update the cell on the JavaFX Application Thread.
+ * A row resolves at most once: scrolling back to it reads the properties again, not the metadata.
+ * </p>
+ */
+public class BookRow {
+
+    private static final String LOADING = "Loading...";
+    private static final String UNKNOWN_TITLE = "Title not available";
+    private static final String UNKNOWN_AUTHOR = "Author not available";
+
+    private final Book book; // Book displayed by the row
+    private SimpleStringProperty title; // Created on first display
+    private SimpleStringProperty author; // Created on first display
+    private boolean resolving; // Whether the metadata was asked for, used on the JavaFX Application Thread
+
+    /**
+     * Constructor to create the row of a book.
+     *
+     * @param book The book.
+     */
+    public BookRow(Book book) {
+        this.book = book;
+    }
+
+    /**
+     * Gets the book of the row.
+     *
+     * @return The book.
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Gets the ISBN of the book.
+     *
+     * @return The ISBN of the book.
+     */
+    public String getIsbn() {
+        return book.getIsbn();
+    }
+
+    /**
+     * Gets the loan count of the book.
+     *
+     * @return The number of times the book has been loaned.
+     */
+    public int getLoansCount() {
+        return book.getLoansCount();
+    }
+
+    /**
+     * Gets the title of the book, resolved in the background on first call.
+     *
+     * @return The title property.
+     */
+    public ReadOnlyStringProperty titleProperty() {
+        resolve();
+        return title;
+    }
+
+    /**
+     * Gets the author of the book, resolved in the background on first call.
+     *
+     * @return The author property.
+     */
+    public ReadOnlyStringProperty authorProperty() {
+        resolve();
+        return author;
+    }
+
+    /**
+     * Creates the properties with a placeholder and starts reading the metadata, the first time only.
+     * The metadata is applied at once when it is already in the cache.
+     */
+    private void resolve() {
+        if (resolving) {
+            return;
+        }
+        resolving = true;
+        title = new SimpleStringProperty(this, "title", LOADING);
+        author = new SimpleStringProperty(this, "author", LOADING);
+        BookMetadataService.getInstance().getAsync(book.getIsbn()).thenAcceptAsync(this::apply, BookRow::runOnFxThread)
+                .exceptionally(AsyncLibrary::logFailure);
+    }
+
+    /**
+     * Shows the metadata in the properties.
+     *
+     * @param metadata The metadata, or null if it could not be found.
+     */
+    private void apply(BookMetadata metadata) {
+        title.set(metadata != null && metadata.getTitle() != null ? metadata.getTitle() : UNKNOWN_TITLE);
+        author.set(metadata != null && metadata.getAuthor() != null ? metadata.getAuthor() : UNKNOWN_AUTHOR);
+    }
+
+    /**
+     * Runs a task on the JavaFX Application Thread, directly when already on it so a cached value is
+     * shown in the first rendering of the cell.
+     *
+     * @param task The task.
+     */
+    private static void runOnFxThread(Runnable task) {
+        if (Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            Platform.runLater(task);
+        }
+    }
+}
@@ -6,26 +6,37 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.Node;
+import javafx.geometry.Orientation;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Comparator;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 import javafx.scene.control.cell.PropertyValueFactory;
 
-import org.w3c.dom.Document;
-
+import dao.AsyncLibrary;
 import dao.BookDao;
-import dao.LoanDao;
+import dao.BookRepository;
+import dao.LibraryExporter;
+import dao.Repositories;
 import api.BNFApiClient;
+import api.BookMetadataService;
+import api.CatalogImporter;
+import api.SruSearchSession;
 import model.Book;
 import model.DetailedBook;
 /**
  * Controller class for managing book-related operations in the application.
+ * The view is kept once built; when it is shown again only the books and top books that changed are reloaded.
  */
-public class BooksViewController {
+public class BooksViewController implements CachedView {
     // FXML annotations for UI elements
     @FXML private TextField titleField; // TextField for entering the book title
     @FXML private TextField authorField; // TextField for entering the book author
@@ -43,16 +54,31 @@ public class BooksViewController {
     @FXML private TableColumn<DetailedBook, String> dateColumn; // Column for publication date
     @FXML private TableColumn<DetailedBook, String> collectionColumn; // Column for book collection
     @FXML private TableColumn<DetailedBook, String> availabilityColumn; // Column for book availability
-    @FXML private TableView<Book> topBooksTable; // TableView to display top books
-    @FXML private TableColumn<Book, String> topTitleColumn; // Column for top book title
-    @FXML private TableColumn<Book, String> topAuthorColumn; // Column for top book author
-    @FXML private TableColumn<Book, String> topIsbnColumn; // Column for top book ISBN
-    @FXML private TableColumn<Book, Integer> topLoansColumn; // Column for top book loans count
+    @FXML private TableView<BookRow> topBooksTable; // TableView to display top books
+    @FXML private TableColumn<BookRow, String> topTitleColumn; // Column for top book title
+    @FXML private TableColumn<BookRow, String> topAuthorColumn; // Column for top book author
+    @FXML private TableColumn<BookRow, String> topIsbnColumn; // Column for top book ISBN
+    @FXML private TableColumn<BookRow, Integer> topLoansColumn; // Column for top book loans count
 
     // Instances of API client and DAOs
     private BNFApiClient apiClient = new BNFApiClient();
-    private BookDao bookDao = new BookDao();
-    private LoanDao loanDao = new LoanDao();
+    private BookRepository bookDao = Repositories.books();
+
+    // Current BNF search, its results and the state of its paging, used on the JavaFX Application Thread
+    private SruSearchSession searchSession;
+    private ObservableList<DetailedBook> searchResults = FXCollections.observableArrayList();
+    private boolean pageLoading;
+    private boolean scrollListenerInstalled;
+    private long searchStartTime;
+
+    // Share of the results scrolled through after which the next page is loaded
+    private static final double PREFETCH_SCROLL_RATIO = 0.8;
+
+    // Versions of the data loaded by initialize or refresh
+    private final DataVersions.Seen seen = new DataVersions.Seen();
+
+    // Number of concurrent BNF requests used when importing a file of ISBNs
+    private static final int IMPORT_PARALLELISM = Integer.getInteger("cybook.import.parallelism", 8);
     
     /**
      * Default constructor.
@@ -63,18 +89,12 @@ public class BooksViewController {
 
     /**
      * Initialize method called after FXML is loaded.
-     * It sets up the TableView columns and loads the books and top borrowed books from the database.
+     * It sets up the TableView columns and starts loading the top borrowed books in the background.
      */
     public void initialize() {
         long startTime = System.currentTimeMillis();
         
-        loadBooks();
-        long loadBooksTime = System.currentTimeMillis();
-        System.out.println("Time taken to loadBooks: " + (loadBooksTime - startTime) + "ms");
-        
         loadTopBooks();
-        long loadTopBooksTime = System.currentTimeMillis();
-        System.out.println("Time taken to loadTopBooks: " + (loadTopBooksTime - loadBooksTime) + "ms");
         
         // Set cell value factories for TableView columns
         titleColumn.setCellValueFactory(new PropertyValueFactory<>("title"));
@@ -84,8 +104,9 @@ public class BooksViewController {
         dateColumn.setCellValueFactory(new PropertyValueFactory<>("publicationDate"));
         availabilityColumn.setCellValueFactory(new PropertyValueFactory<>("availability"));
 
-        topTitleColumn.setCellValueFactory(new PropertyValueFactory<>("title"));
-        topAuthorColumn.setCellValueFactory(new PropertyValueFactory<>("author"));
+        // Titles and authors are resolved in the background when their row is first displayed
+        topTitleColumn.setCellValueFactory(cell -> cell.getValue().titleProperty());
+        topAuthorColumn.setCellValueFactory(cell -> cell.getValue().authorProperty());
         topIsbnColumn.setCellValueFactory(new PropertyValueFactory<>("isbn"));
         topLoansColumn.setCellValueFactory(new PropertyValueFactory<>("loansCount"));
 
@@ -94,17 +115,14 @@ public class BooksViewController {
     }
 
     /**
-     * Load books from the database and filter only the books that are in stock.
+     * Reload the top borrowed books if the loans changed since the view was last shown.
+     * The current search results are kept.
      */
-    private void loadBooks() {
-        long startTime = System.currentTimeMillis();
-        List<Book> books = bookDao.getAllBooks();
-        books = books.stream()
-                     .filter(book -> book.getStock() > 0)
-                     .sorted(Comparator.comparing(Book::getIsbn))
-                     .collect(Collectors.toList());
-        long endTime = System.currentTimeMillis();
-        System.out.println("Time taken for loadBooks: " + (endTime - startTime) + "ms");
+    @Override
+    public void refresh() {
+        if (seen.changed(DataVersions.Data.LOANS)) {
+            loadTopBooks();
+        }
     }
 
     /**
@@ -112,18 +130,19 @@ public class BooksViewController {
      */
     private void loadTopBooks() {
         long startTime = System.currentTimeMillis();
-        List<Book> topBooks = loanDao.fetchTopBooks();
-        ObservableList<Book> topBooksObservableList = FXCollections.observableArrayList(topBooks);
-        Platform.runLater(() -> {
+        AsyncLibrary.loans(loans -> loans.fetchTopBooks()).thenAcceptAsync(topBooks -> {
+            ObservableList<BookRow> topBooksObservableList = FXCollections.observableArrayList();
+            topBooks.forEach(book -> topBooksObservableList.add(new BookRow(book)));
             topBooksTable.setItems(topBooksObservableList);
-        });
-        long endTime = System.currentTimeMillis();
-        System.out.println("Time taken for loadTopBooks: " + (endTime - startTime) + "ms");
+            long endTime = System.currentTimeMillis();
+            System.out.println("Time taken for loadTopBooks: " + (endTime - startTime) + "ms");
+        }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
     }
 
     /**
      * Handle search action triggered by the search button.
-     * It prepares the query based on the filled fields and displays the search results in the TableView.
+     * It prepares the query based on the filled fields and displays the first page of the search results in the TableView.
+     * The following pages are appended when the user scrolls down.
      */
     @FXML
     private void handleSearchAction() {
@@ -144,18 +163,81 @@ public class BooksViewController {
             return;
         }
         String query = "(" + String.join(") and (", conditions) + ")";
-        List<DetailedBook> books = apiClient.searchBooks(query);
-        if (books.isEmpty()) {
-            searchResponseLabel.setText("No books found.");
-            updateResponse(searchResponseLabel, "No books found.", false);
-
-        } else {
-            searchResponseLabel.setText("Books found: " + books.size());
-            updateResponse(searchResponseLabel, "Books found: " + books.size(), true);
-            displayBooks(books);
+
+        // A new search supersedes the previous one, whose pending pages are dropped
+        if (searchSession != null) {
+            searchSession.cancel();
         }
-        long endTime = System.currentTimeMillis();
-        System.out.println("Time taken for HandleSearchAction: " + (endTime - startTime) + "ms");
+        searchSession = new SruSearchSession(apiClient, query, SruSearchSession.DEFAULT_PAGE_SIZE);
+        searchStartTime = startTime;
+        pageLoading = false;
+        searchResults = FXCollections.observableArrayList();
+        booksTable.setItems(searchResults);
+        installScrollListener();
+        loadNextPage();
+    }
+
+    /**
+     * Load the next page of the current search and append it to the TableView.
+     * The page after it is prefetched as soon as this one is displayed.
+     */
+    private void loadNextPage() {
+        SruSearchSession session = searchSession;
+        if (session == null || pageLoading || !session.hasMore()) {
+            return;
+        }
+        CompletableFuture<SruSearchSession.Page> nextPage = session.nextPage();
+        if (nextPage == null) {
+            return;
+        }
+        pageLoading = true;
+        nextPage.thenAcceptAsync(page -> {
+            if (session != searchSession) {
+                return; // Superseded by a newer search
+            }
+            pageLoading = false;
+            searchResults.addAll(page.getBooks());
+            if (searchResults.isEmpty() && page.isLast()) {
+                updateResponse(searchResponseLabel, "No books found.", false);
+            } else {
+                int total = page.getNumberOfRecords();
+                updateResponse(searchResponseLabel, "Books found: " + searchResults.size() + (total > 0 ? " / " + total : ""), true);
+            }
+            if (page.getStartRecord() == 1) {
+                System.out.println("Time taken for HandleSearchAction (first page): " + (System.currentTimeMillis() - searchStartTime) + "ms");
+            }
+            session.prefetch();
+        }, Platform::runLater).exceptionally(error -> {
+            Platform.runLater(() -> {
+                if (session == searchSession) {
+                    pageLoading = false;
+                }
+            });
+            return AsyncLibrary.logFailure(error);
+        });
+    }
+
+    /**
+     * Listen to the vertical scroll bar of the results, so the next page is loaded when the user
+     * scrolls near the end. The scroll bar only exists once the TableView is displayed.
+     */
+    private void installScrollListener() {
+        if (scrollListenerInstalled) {
+            return;
+        }
+        Platform.runLater(() -> {
+            for (Node node : booksTable.lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                    ScrollBar scrollBar = (ScrollBar) node;
+                    scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                        if (newValue.doubleValue() >= scrollBar.getMax() * PREFETCH_SCROLL_RATIO) {
+                            loadNextPage();
+                        }
+                    });
+                    scrollListenerInstalled = true;
+                }
+            }
+        });
     }
 
     /**
@@ -187,18 +269,92 @@ public class BooksViewController {
             updateResponse(responseLabel, "Please enter an ISBN.", false);
             return;
         }
-        Document bookData = apiClient.fetchBookDetailsByISBN(isbn);
-        if (bookData != null && bookData.getElementsByTagNameNS("*", "record").getLength() > 0) {
-            bookDao.updateOrAddBook(isbn);
-            responseLabel.setText("ISBN added/updated in the local database.");
-            updateResponse(responseLabel, "ISBN added/updated in the local database.", true);
-            loadBooks();
-        } else {
-            responseLabel.setText("ISBN not found in BNF.");
-            updateResponse(responseLabel, "ISBN not found in BNF.", false);
-        }
+        // Reading the BNF record checks the ISBN and fills the local metadata in one request, outside the database calls
+        BookMetadataService.getInstance().fetchAndStoreAsync(isbn).thenCompose(metadata -> metadata == null
+                ? CompletableFuture.completedFuture(false)
+                : AsyncLibrary.supply(() -> {
+                    bookDao.updateOrAddBook(isbn);
+                    return true;
+                })).thenAcceptAsync(added -> {
+            if (added) {
+                responseLabel.setText("ISBN added/updated in the local database.");
+                updateResponse(responseLabel, "ISBN added/updated in the local database.", true);
+                DataVersions.changed(DataVersions.Data.BOOKS);
+                SearchIndexes.stockChanged(isbn);
+            } else {
+                responseLabel.setText("ISBN not found in BNF.");
+                updateResponse(responseLabel, "ISBN not found in BNF.", false);
+            }
+        }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
     }
     
+    /**
+     * Handle the action of importing a file of ISBNs or barcodes, one per line.
+     * The import runs in the background and reports its progress in the response label.
+     */
+    @FXML
+    private void handleImportAction() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select a file of ISBNs");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Text files", "*.txt", "*.csv"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = fileChooser.showOpenDialog(inputField.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        updateResponse(responseLabel, "Importing " + file.getName() + "...", true);
+        CatalogImporter importer = new CatalogImporter(apiClient, bookDao, IMPORT_PARALLELISM, BookDao.UPSERT_BATCH_SIZE);
+        Thread importThread = new Thread(() -> {
+            try {
+                CatalogImporter.Progress result = importer.importFile(file.toPath(), progress -> {
+                    if (!progress.isFinished()) {
+                        Platform.runLater(() -> updateResponse(responseLabel, "Importing: " + progress, true));
+                    }
+                });
+                System.out.println("Import of " + file.getName() + " finished in " + result.getElapsedMillis() + "ms: " + result);
+                Platform.runLater(() -> {
+                    updateResponse(responseLabel, "Import finished: " + result, result.getAccepted() > 0);
+                    DataVersions.changed(DataVersions.Data.BOOKS);
+                    SearchIndexes.reloadBooks(); // Many books may have changed
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> updateResponse(responseLabel, "Cannot read " + file.getName() + ": " + e.getMessage(), false));
+            }
+        }, "cybook-import-file");
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+
+    /**
+     * Handle the action of exporting the books, the users and the loans to CSV files in a directory.
+     * The export streams the tables in the background and reports its result in the response label.
+     */
+    @FXML
+    private void handleExportAction() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select the directory of the CSV files");
+        File directory = directoryChooser.showDialog(inputField.getScene().getWindow());
+        if (directory == null) {
+            return;
+        }
+
+        updateResponse(responseLabel, "Exporting to " + directory.getName() + "...", true);
+        Thread exportThread = new Thread(() -> {
+            long startTime = System.currentTimeMillis();
+            try {
+                LibraryExporter.Counts counts = new LibraryExporter().exportAll(directory.toPath());
+                System.out.println("Export to " + directory + " finished in " + (System.currentTimeMillis() - startTime) + "ms: " + counts);
+                Platform.runLater(() -> updateResponse(responseLabel, "Exported " + counts + " to " + directory.getName() + ".", true));
+            } catch (IOException | RuntimeException e) {
+                Platform.runLater(() -> updateResponse(responseLabel, "Export failed: " + e.getMessage(), false));
+            }
+        }, "cybook-export");
+        exportThread.setDaemon(true);
+        exportThread.start();
+    }
+
     /**
      * Update the response label with the given message and style.
      *
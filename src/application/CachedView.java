@@ -0,0 +1,14 @@
+package application;
+
+/**
+ * Controller of a view that is built once and shown again each time it is selected.
+ * Instead of being built again, the view is told it is shown so it can reload the data that changed.
+ */
+public interface CachedView {
+
+    /**
+     * Called on the JavaFX Application Thread each time the view is shown, the first time included.
+     * Reloads in the background the data that changed since it was last loaded, see {@link DataVersions}.
+     */
+    void refresh();
+}
@@ -0,0 +1,80 @@
+package application;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Change counters of the library data shown by the views.
+ * <p>
+ * The views are built once and kept by {@link MainViewController}. A view that changes some data
+ * increments its counter with {@link #changed(Data)}, and each view remembers in a {@link Seen} the
+ * counters of the data it loaded, so that when it is shown again it only reloads what changed since.
+ * The counters can be read and incremented from any thread.
+ * </p>
+ */
+public final class DataVersions {
+
+    /**
+     * Kinds of data loaded by the views.
+     */
+    public enum Data {
+        /** The users. */
+        USERS,
+        /** The books and their stock. */
+        BOOKS,
+        /** The loans, which also change the stock and the most borrowed books. */
+        LOANS
+    }
+
+    private static final AtomicLongArray versions = new AtomicLongArray(Data.values().length);
+
+    private DataVersions() {
+        // Static counters
+    }
+
+    /**
+     * Records that some data changed.
+     *
+     * @param data The data that changed.
+     */
+    public static void changed(Data data) {
+        versions.incrementAndGet(data.ordinal());
+    }
+
+    /**
+     * Versions of the data loaded by a view, used on the JavaFX Application Thread.
+     */
+    public static final class Seen {
+        private final long[] seen = new long[Data.values().length];
+
+        /**
+         * Creates the versions of a view that is loading the current data.
+         */
+        public Seen() {
+            for (Data data : Data.values()) {
+                seen[data.ordinal()] = versions.get(data.ordinal());
+            }
+        }
+
+        /**
+         * Tells whether some data changed since the view last loaded it, and records it as loaded.
+         *
+         * @param data The data.
+         * @return true if the view has to reload the data.
+         */
+        public boolean changed(Data data) {
+            long current = versions.get(data.ordinal());
+            boolean changed = current != seen[data.ordinal()];
+            seen[data.ordinal()] = current;
+            return changed;
+        }
+
+        /**
+         * Records some data as loaded, after the view changed and reloaded it itself.
+         *
+         * @param data The data.
+         */
+        public void record(Data data) {
+            seen[data.ordinal()] = versions.get(data.ordinal());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package application;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+import model.LateLoan;
+
+/**
+ * Row of the late loans report: a late loan with the title of its book, formatted in fixed-width columns.
+ * A row is only created once the title of its book is resolved, so it never changes.
+ */
+public class LateLoanRow {
+
+    /** Column titles, aligned with the rows. */
+    public static final String HEADER = String.format("%-10s %-25s %-15s %-50s %-15s %-15s", "LOAN ID", "Borrower", "ISBN", "Title", "Return Date", "Days Late");
+
+    /** Most days late first, then by loan ID. */
+    public static final Comparator<LateLoanRow> BY_DAYS_LATE = Comparator
+            .comparingInt((LateLoanRow row) -> -row.getLateLoan().getDaysLate())
+            .thenComparingInt(row -> row.getLateLoan().getLoanId());
+
+    /** By name of the borrower, then most days late first. */
+    public static final Comparator<LateLoanRow> BY_BORROWER = Comparator
+            .comparing((LateLoanRow row) -> row.getLateLoan().getBorrower(), String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(BY_DAYS_LATE);
+
+    /** By title of the book, then most days late first. */
+    public static final Comparator<LateLoanRow> BY_TITLE = Comparator
+            .comparing(LateLoanRow::getTitle, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(BY_DAYS_LATE);
+
+    private static final String UNKNOWN_TITLE = "Title not available";
+
+    private final LateLoan lateLoan; // Loan displayed by the row
+    private final String title; // Title of the book
+    private final String text; // Formatted once, shown by the list
+    private final String searchText; // Lower-case borrower, ISBN and title matched by the filter
+
+    /**
+     * Constructor to create the row of a late loan.
+     *
+     * @param lateLoan The late loan.
+     * @param title    The title of the book, or null if it could not be found.
+     */
+    public LateLoanRow(LateLoan lateLoan, String title) {
+        this.lateLoan = lateLoan;
+        this.title = title != null ? title : UNKNOWN_TITLE;
+        this.text = String.format("%-10d %-25s %-15s %-50s %-15s %-15d",
+                lateLoan.getLoanId(), lateLoan.getBorrower(), lateLoan.getIsbn(), this.title,
+                lateLoan.getDueDate().toString(), lateLoan.getDaysLate());
+        this.searchText = (lateLoan.getBorrower() + "\n" + lateLoan.getIsbn() + "\n" + this.title).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the late loan of the row.
+     *
+     * @return The late loan.
+     */
+    public LateLoan getLateLoan() {
+        return lateLoan;
+    }
+
+    /**
+     * Gets the title of the book.
+     *
+     * @return The title, or a placeholder if it could not be found.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Tells whether the borrower, the ISBN or the title contains a text, ignoring case.
+     *
+     * @param filter The text, or null or blank to match every row.
+     * @return true if the row matches.
+     */
+    public boolean matches(String filter) {
+        return filter == null || filter.isBlank() || searchText.contains(filter.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the row formatted in columns.
+     *
+     * @return The text shown in the list.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
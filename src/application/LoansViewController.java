@@ -4,38 +4,61 @@ import javafx.fxml.FXML;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import api.BNFApiClient;
-import dao.BookDao;
-import dao.LoanDao;
-import dao.UserDao;
+import api.BookMetadataService;
+import dao.AsyncLibrary;
+import dao.CheckoutResult;
+import model.BnfRecord;
 import model.Book;
-import model.Loan;
+import model.BookMetadata;
+import model.LateLoan;
 import model.User;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 /**
  * Controller class for managing loans-related operations in the application.
+ * Database and BNF calls run through {@link AsyncLibrary}; their results are applied on the JavaFX Application Thread.
+ * The users and books are found by typing in fields searching the shared {@link SearchIndexes}, kept up to
+ * date by the views. The view is kept once built; when it is shown again only the loans that changed are reloaded.
  */
-public class LoansViewController {
-    @FXML private ComboBox<User> userComboBox; // ComboBox for selecting a user for loaning a book
-    @FXML private ComboBox<Book> bookComboBox; // ComboBox for selecting a book to loan
-    @FXML private ComboBox<User> returnUserComboBox; // ComboBox for selecting a user to return a book
+public class LoansViewController implements CachedView {
+    @FXML private TypeAheadField<User> userField; // Field for finding the user borrowing a book
+    @FXML private TypeAheadField<BookChoice> bookField; // Field for finding the book to loan among the books in stock
+    @FXML private TypeAheadField<User> returnUserField; // Field for finding the user returning a book
     @FXML private ComboBox<Book> returnBookComboBox; // ComboBox for selecting a book to return
-    @FXML private ListView<String> lateLoansListView; // ListView to display late loans
+    @FXML private ListView<LateLoanRow> lateLoansListView; // ListView to display late loans
+    @FXML private Label lateLoansHeaderLabel; // Label for the column titles of the late loans
+    @FXML private TextField lateLoansFilterField; // TextField for filtering the late loans
+    @FXML private ComboBox<String> lateLoansSortComboBox; // ComboBox for choosing the order of the late loans
+    @FXML private Label lateLoansStatusLabel; // Label for displaying the progress of the late loans report
     @FXML private Label loanResponseLabel; // Label for displaying loan response messages
     @FXML private Label returnResponseLabel; // Label for displaying return response messages
     @FXML private Label overdueBooksCountLabel; // Label for displaying count of overdue books
 
     private BNFApiClient apiClient = new BNFApiClient();
-    private BookDao bookDao = new BookDao();
-    private UserDao userDao = new UserDao();
-    private LoanDao loanDao = new LoanDao();
+    private CompletableFuture<Void> pendingBorrowedBooks; // Load of the books of the selected user, cancelled on a new selection
+    private final ObservableList<LateLoanRow> lateLoanRows = FXCollections.observableArrayList(); // Rows resolved so far, in arrival order
+    private int lateLoansRequest; // Number of the last late loans request, used on the JavaFX Application Thread
+    private final DataVersions.Seen seen = new DataVersions.Seen(); // Versions of the data loaded by initialize or refresh
+
+    private static final Map<String, Comparator<LateLoanRow>> LATE_LOAN_ORDERS = new LinkedHashMap<>();
+    static {
+        LATE_LOAN_ORDERS.put("Days late", LateLoanRow.BY_DAYS_LATE);
+        LATE_LOAN_ORDERS.put("Borrower", LateLoanRow.BY_BORROWER);
+        LATE_LOAN_ORDERS.put("Title", LateLoanRow.BY_TITLE);
+    }
     
     /**
      * Default constructor.
@@ -48,67 +71,75 @@ public class LoansViewController {
      * Initialize method to load initial data and setup listeners.
      */
     public void initialize() {
-        loadUsers();
-        loadBooks();
-        setupComboBoxListeners();
+        setupSearchFields();
+        setupLateLoansList();
         updateOverdueBooksCount();
     }
 
     /**
-     * Setup listeners for ComboBox selections.
+     * Setup the searches of the user and book fields and the listener of the returning user.
      */
-    private void setupComboBoxListeners() {
-        returnUserComboBox.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
+    private void setupSearchFields() {
+        userField.setSearch(SearchIndexes.users()::search);
+        returnUserField.setSearch(SearchIndexes.users()::search);
+        bookField.setSearch(SearchIndexes.books()::search);
+        returnUserField.selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             if (newSelection != null) {
                 loadBooksBorrowedBy(newSelection);
+            } else {
+                if (pendingBorrowedBooks != null) {
+                    pendingBorrowedBooks.cancel(false);
+                }
+                returnBookComboBox.setItems(FXCollections.observableArrayList());
             }
         });
     }
 
     /**
-     * Load books borrowed by a specific user.
-     *
-     * @param user The user whose borrowed books are to be loaded
+     * Reload the data that changed since the view was last shown.
      */
-    private void loadBooksBorrowedBy(User user) {
-        List<Book> borrowedBooks = loanDao.getBorrowedBooksByUser(user.getId());
-        returnBookComboBox.setItems(FXCollections.observableArrayList(borrowedBooks));
+    @Override
+    public void refresh() {
+        // The users and books are searched in the shared indexes, which the other views keep up to date
+        if (seen.changed(DataVersions.Data.LOANS)) {
+            User returnUser = returnUserField.getSelectedItem();
+            if (returnUser != null) {
+                loadBooksBorrowedBy(returnUser);
+            }
+            updateOverdueBooksCount();
+        }
     }
 
     /**
-     * Load users from the database.
+     * Setup the filtering and sorting of the late loans, done on the rows already loaded.
      */
-    private void loadUsers() {
-        List<User> users = userDao.getAllUsers();
-        users.sort((u1, u2) -> {
-            int lastNameCompare = u1.getLastName().compareToIgnoreCase(u2.getLastName());
-            if (lastNameCompare == 0) {
-                return u1.getFirstName().compareToIgnoreCase(u2.getFirstName());
+    private void setupLateLoansList() {
+        FilteredList<LateLoanRow> filteredRows = new FilteredList<>(lateLoanRows, row -> true);
+        SortedList<LateLoanRow> sortedRows = new SortedList<>(filteredRows, LateLoanRow.BY_DAYS_LATE);
+        lateLoansListView.setItems(sortedRows);
+        lateLoansHeaderLabel.setText(LateLoanRow.HEADER);
+        lateLoansFilterField.textProperty().addListener((obs, oldText, newText) -> filteredRows.setPredicate(row -> row.matches(newText)));
+        lateLoansSortComboBox.setItems(FXCollections.observableArrayList(LATE_LOAN_ORDERS.keySet()));
+        lateLoansSortComboBox.getSelectionModel().selectFirst();
+        lateLoansSortComboBox.valueProperty().addListener((obs, oldOrder, newOrder) -> {
+            if (newOrder != null) {
+                sortedRows.setComparator(LATE_LOAN_ORDERS.get(newOrder));
             }
-            return lastNameCompare;
         });
-        ObservableList<User> userObservableList = FXCollections.observableArrayList(users);
-        userComboBox.setItems(userObservableList);
-        returnUserComboBox.setItems(userObservableList);
-        if (!users.isEmpty()) {
-            userComboBox.getSelectionModel().selectLast();
-            returnUserComboBox.getSelectionModel().selectLast();
-        }
     }
 
     /**
-     * Load books from the database.
+     * Load books borrowed by a specific user.
+     *
+     * @param user The user whose borrowed books are to be loaded
      */
-    private void loadBooks() {
-        List<Book> books = bookDao.getAllBooks();
-        books = books.stream()
-                     .filter(book -> book.getStock() > 0)
-                     .sorted(Comparator.comparing(Book::getIsbn))
-                     .collect(Collectors.toList());
-        bookComboBox.setItems(FXCollections.observableArrayList(books));
-        if (!books.isEmpty()) {
-            bookComboBox.getSelectionModel().selectFirst();
+    private void loadBooksBorrowedBy(User user) {
+        if (pendingBorrowedBooks != null) {
+            pendingBorrowedBooks.cancel(false); // The previous selection is no longer displayed
         }
+        pendingBorrowedBooks = AsyncLibrary.loans(loans -> loans.getBorrowedBooksByUser(user.getId()))
+                .thenAcceptAsync(borrowedBooks -> returnBookComboBox.setItems(FXCollections.observableArrayList(borrowedBooks)), Platform::runLater);
+        pendingBorrowedBooks.exceptionally(AsyncLibrary::logFailure);
     }
 
     /**
@@ -116,8 +147,8 @@ public class LoansViewController {
      */
     @FXML
     private void handleLoanAction() {
-        User selectedUser = userComboBox.getSelectionModel().getSelectedItem();
-        Book selectedBook = bookComboBox.getSelectionModel().getSelectedItem();
+        User selectedUser = userField.getSelectedItem();
+        BookChoice selectedBook = bookField.getSelectedItem();
 
         // Check that both user and book are selected
         if (selectedUser == null || selectedBook == null) {
@@ -125,30 +156,50 @@ public class LoansViewController {
             return;
         }
 
-        // Check the number of active loans for the user
-        int activeLoansCount = loanDao.countActiveLoansByUser(selectedUser.getId());
-        if (activeLoansCount >= 3) {
-            updateResponseLabel(loanResponseLabel, "Loan failed: The user has already borrowed three books.", false);
-            return;
-        }
-
-        // Use a new thread to avoid blocking the UI during the HTTP request
-        new Thread(() -> {
-            String title = apiClient.fetchTitle(selectedBook.getIsbn());
-            // Update the UI on the JavaFX Application Thread
-            Platform.runLater(() -> {
-                if (!"Unknow Title".equals(title)) {
-                    Loan newLoan = new Loan(0, selectedUser, selectedBook, new java.util.Date(), calculateDueDate(), 0);
-                    loanDao.addLoan(newLoan);
-                    updateResponseLabel(loanResponseLabel, "Loan made for " + selectedUser.getFirstName() + " " + selectedUser.getLastName() + " of the book \"" + title + "\"", true);
-                    loadBooks(); // Reload the book list to reflect stock changes
-                    loadBooksBorrowedBy(selectedUser); // Reload the list of books borrowed by the user
-                    updateOverdueBooksCount(); // Update the late book counter
-                } else {
-                    updateResponseLabel(loanResponseLabel, "Loan failed: The book title is unknown.", false);
-                }
-            });
-        }).start();
+        // The HTTP request and the checkout run in the background, the result is shown on the JavaFX Application Thread
+        AsyncLibrary.supply(() -> {
+            // The title is the one indexed and only asked to the BNF if the book had no metadata yet
+            String localTitle = selectedBook.getTitle();
+            if (localTitle != null) {
+                return localTitle;
+            }
+            BnfRecord record = apiClient.fetchRecord(selectedBook.getIsbn());
+            return record != null ? record.getTitle() : null;
+        }).thenCompose(title -> {
+            if ("Unknow Title".equals(title)) {
+                Platform.runLater(() -> updateResponseLabel(loanResponseLabel, "Loan failed: The book title is unknown.", false));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            // Eligibility, stock reservation and loan insertion happen in one transaction
+            return AsyncLibrary.loans(loans -> loans.checkout(selectedUser.getId(), selectedBook.getIsbn(), new java.util.Date(), calculateDueDate()))
+                    .thenAcceptAsync(result -> {
+                        switch (result) {
+                            case OK:
+                                DataVersions.changed(DataVersions.Data.LOANS);
+                                seen.record(DataVersions.Data.LOANS);
+                                updateResponseLabel(loanResponseLabel, "Loan made for " + selectedUser.getFirstName() + " " + selectedUser.getLastName() + " of the book \"" + title + "\"", true);
+                                SearchIndexes.stockChanged(selectedBook.getIsbn()); // The last copy is no longer offered
+                                bookField.clear();
+                                loadBooksBorrowedBy(selectedUser); // Reload the list of books borrowed by the user
+                                updateOverdueBooksCount(); // Update the late book counter
+                                break;
+                            case LIMIT_REACHED:
+                                updateResponseLabel(loanResponseLabel, "Loan failed: The user has already borrowed three books.", false);
+                                break;
+                            case NO_STOCK:
+                                updateResponseLabel(loanResponseLabel, "Loan failed: The book is out of stock.", false);
+                                SearchIndexes.stockChanged(selectedBook.getIsbn());
+                                bookField.clear();
+                                break;
+                            default:
+                                updateResponseLabel(loanResponseLabel, "Loan failed: The loan could not be saved.", false);
+                                break;
+                        }
+                    }, Platform::runLater);
+        }).exceptionally(error -> {
+            Platform.runLater(() -> updateResponseLabel(loanResponseLabel, "Loan failed: The loan could not be saved.", false));
+            return AsyncLibrary.logFailure(error);
+        });
     }
 
     /**
@@ -156,44 +207,100 @@ public class LoansViewController {
      */
     @FXML
     private void handleReturnAction() {
-        User selectedUser = returnUserComboBox.getSelectionModel().getSelectedItem();
+        User selectedUser = returnUserField.getSelectedItem();
         Book selectedBook = returnBookComboBox.getSelectionModel().getSelectedItem();
-            boolean isReturnSuccessfully = loanDao.returnLoan(selectedUser.getId(), selectedBook.getIsbn());
-            if (isReturnSuccessfully) {
-                updateResponseLabel(returnResponseLabel, "The book was successfully returned.", true);
-                loadBooks();  // Refresh the book list to update the stock
-                loadUsers();  // Refresh users if necessary
-            }
-
-            else {
-            returnResponseLabel.setText("Please select a user and a book.");
+        if (selectedUser == null || selectedBook == null) {
             updateResponseLabel(returnResponseLabel, "Please select a user and a book.", false);
-            }
-            updateOverdueBooksCount();
+            return;
+        }
+        AsyncLibrary.loans(loans -> loans.returnLoan(selectedUser.getId(), selectedBook.getIsbn()))
+                .thenAcceptAsync(isReturnSuccessfully -> {
+                    if (isReturnSuccessfully) {
+                        DataVersions.changed(DataVersions.Data.LOANS);
+                        seen.record(DataVersions.Data.LOANS);
+                        updateResponseLabel(returnResponseLabel, "The book was successfully returned.", true);
+                        SearchIndexes.stockChanged(selectedBook.getIsbn()); // The book can be loaned again
+                        loadBooksBorrowedBy(selectedUser); // Refresh the books still borrowed by the user
+                    } else {
+                        updateResponseLabel(returnResponseLabel, "Please select a user and a book.", false);
+                    }
+                    updateOverdueBooksCount();
+                }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
     }
-    
 
     /**
      * Handle the action of showing late loans.
+     * The days late come with the loans from one query. The titles are then resolved in parallel
+     * batches in the background, and the rows of each batch are added to the list as soon as it is ready.
      */
     @FXML
     private void handleShowLateLoans() {
-        List<Loan> lateLoans = loanDao.getLateLoans();
-        ObservableList<String> formattedLoans = FXCollections.observableArrayList();
-
-        // Add column titles
-        formattedLoans.add(String.format("%-10s %-25s %-15s %-50s %-15s %-15s", "LOAN ID", "Borrower", "ISBN", "Title", "Return Date", "Days Late"));
-        // Add data
-        lateLoans.forEach(loan -> formattedLoans.add(String.format(
-                "%-10d %-25s %-15s %-50s %-15s %-15d",
-                loan.getId(),
-                loan.getUser().getFirstName() + " " + loan.getUser().getLastName(),
-                loan.getBook().getIsbn(),
-                loan.getBook().getTitle(),
-                loan.getDueDate().toString(),
-                calculateDaysLate(loan.getDueDate()))
-        ));
-        lateLoansListView.setItems(formattedLoans);
+        int request = ++lateLoansRequest; // Results of a previous click are ignored
+        lateLoanRows.clear();
+        lateLoansStatusLabel.setText("Loading late loans...");
+        AsyncLibrary.loans(loans -> loans.getLateLoanReport())
+                .thenAcceptAsync(report -> showLateLoans(request, report), Platform::runLater)
+                .exceptionally(error -> {
+                    Platform.runLater(() -> {
+                        if (request == lateLoansRequest) {
+                            lateLoansStatusLabel.setText("The late loans report failed to load.");
+                        }
+                    });
+                    return AsyncLibrary.logFailure(error);
+                });
+    }
+
+    /**
+     * Resolve the titles of the late loans by batches of ISBNs and add the rows of each batch when it completes.
+     *
+     * @param request The number of the request, to drop the results of a superseded one
+     * @param report The late loans
+     */
+    private void showLateLoans(int request, List<LateLoan> report) {
+        if (request != lateLoansRequest) {
+            return;
+        }
+        Map<String, List<LateLoan>> loansByIsbn = new LinkedHashMap<>();
+        report.forEach(loan -> loansByIsbn.computeIfAbsent(loan.getIsbn(), isbn -> new ArrayList<>()).add(loan));
+        updateLateLoansStatus(report.size());
+
+        List<String> isbns = new ArrayList<>(loansByIsbn.keySet());
+        for (int from = 0; from < isbns.size(); from += BNFApiClient.BATCH_SIZE) {
+            List<String> batch = new ArrayList<>(isbns.subList(from, Math.min(isbns.size(), from + BNFApiClient.BATCH_SIZE)));
+            BookMetadataService.getInstance().getAllAsync(batch)
+                    .exceptionally(error -> {
+                        AsyncLibrary.logFailure(error);
+                        return Collections.emptyMap(); // The rows are still shown, without their titles
+                    })
+                    .thenAcceptAsync(metadata -> {
+                        if (request != lateLoansRequest) {
+                            return;
+                        }
+                        List<LateLoanRow> rows = new ArrayList<>();
+                        for (String isbn : batch) {
+                            BookMetadata bookMetadata = metadata.get(isbn);
+                            String title = bookMetadata != null ? bookMetadata.getTitle() : null;
+                            loansByIsbn.get(isbn).forEach(loan -> rows.add(new LateLoanRow(loan, title)));
+                        }
+                        lateLoanRows.addAll(rows);
+                        updateLateLoansStatus(report.size());
+                    }, Platform::runLater);
+        }
+    }
+
+    /**
+     * Update the progress of the late loans report.
+     *
+     * @param total The number of late loans
+     */
+    private void updateLateLoansStatus(int total) {
+        if (total == 0) {
+            lateLoansStatusLabel.setText("No late loans.");
+        } else if (lateLoanRows.size() < total) {
+            lateLoansStatusLabel.setText(lateLoanRows.size() + " of " + total + " late loan(s) loaded...");
+        } else {
+            lateLoansStatusLabel.setText(total + " late loan(s).");
+        }
     }
 
     /**
@@ -207,19 +314,6 @@ public class LoansViewController {
         return calendar.getTime();
     }
 
-    /**
-     * Calculate the number of days a loan is late.
-     *
-     * @param dueDate The due date of the loan
-     * @return The number of days the loan is late
-     */
-    private int calculateDaysLate(Date dueDate) {
-        java.util.Date currentDate = new java.util.Date();
-        long diffInMillies = currentDate.getTime() - dueDate.getTime();
-        long diffInDays = diffInMillies / (1000 * 60 * 60 * 24);
-        return (int) diffInDays;
-    }
-
     /**
      * Update the overdue books count.
      */
@@ -230,8 +324,9 @@ public class LoansViewController {
             return;  // Exit the method if the label is not available
         }
 
-        int overdueBooksCount = loanDao.countOverdueLoans(); // Get the number of overdue loans
-        overdueBooksCountLabel.setText(String.valueOf(overdueBooksCount) + " book(s) overdue");
+        AsyncLibrary.loans(loans -> loans.countOverdueLoans()) // Get the number of overdue loans
+                .thenAcceptAsync(overdueBooksCount -> overdueBooksCountLabel.setText(String.valueOf(overdueBooksCount) + " book(s) overdue"), Platform::runLater)
+                .exceptionally(AsyncLibrary::logFailure);
     }
 
     /**
@@ -1,10 +1,7 @@
 package application;
 
 import javafx.application.Application;
-import javafx.scene.Scene;
 import javafx.stage.Stage;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.layout.BorderPane;
 
 /**
  * Main class to launch the JavaFX application.
@@ -20,27 +17,14 @@ public class Main extends Application {
 
     /**
      * Starts the JavaFX application.
+     * The window shows a splash screen while the storage, the metadata service and the views are
+     * prepared in parallel, see {@link StartupSequence}.
      * 
      * @param primaryStage the primary stage for this application
      */
     @Override
     public void start(Stage primaryStage) {
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("MainView.fxml"));
-            BorderPane root = loader.load();
-            Scene scene = new Scene(root);
-            // Adding stylesheet to the scene
-            scene.getStylesheets().add(getClass().getResource("../application/style.css").toExternalForm());
-
-            // Setting the stage
-            primaryStage.setScene(scene);
-            primaryStage.setTitle("Books Management");
-            primaryStage.setMaximized(true);
-            primaryStage.show();
-        } catch(Exception e) {
-            // Handling exceptions
-            e.printStackTrace();
-        }
+        new StartupSequence(primaryStage).start();
     }
 
     /**
@@ -1,20 +1,60 @@
 package application;
 
-import dao.LoanDao;
+import dao.AsyncLibrary;
+import util.StartupProfile;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.layout.StackPane;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Controller class for the main view of the application.
+ * <p>
+ * Each view is built once, with its controller, and kept: showing it again only asks its controller to
+ * reload the data that changed (see {@link CachedView}). The views are built on a background thread,
+ * which JavaFX allows as long as their nodes are not in a scene yet, and {@link #preloadViews()} builds
+ * them all right after the main window is shown so the first switch to a view does not wait either.
+ * </p>
  */
 public class MainViewController {
 
+    private static final String[] VIEWS = {"LoansView.fxml", "UsersView.fxml", "BooksView.fxml"};
+
+    // One thread builds the views in turn, the first one asked before the others
+    private static final ExecutorService viewLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cybook-view-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @FXML private Label overdueBooksCountLabel;
     @FXML private StackPane contentArea;
-    @FXML private LoanDao loanDao = new LoanDao();
+
+    private final Map<String, CompletableFuture<LoadedView>> views = new HashMap<>(); // Built or being built, used on the JavaFX Application Thread
+    private String requestedView; // Last view asked for, so a view built late does not replace a later choice
+
+    /**
+     * A view and its controller.
+     */
+    private static final class LoadedView {
+        private final Node root;
+        private final Object controller;
+
+        LoadedView(Node root, Object controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
     
     /**
      * Constructeur par défaut.
@@ -45,30 +85,91 @@ public class MainViewController {
     }
 
     /**
-     * Initialize method, called automatically after the FXML file is loaded.
-     * Updates the overdue books count.
+     * Starts building in the background the views that are not built yet.
+     * Called once the main window is shown, after the storage is opened, since the views load their data when built.
+     *
+     * @return a future completed when all the views are built, even if some could not be
      */
-    public void initialize() {
-        updateOverdueBooksCount();
+    public CompletableFuture<Void> preloadViews() {
+        CompletableFuture<?>[] built = new CompletableFuture<?>[VIEWS.length];
+        for (int i = 0; i < VIEWS.length; i++) {
+            built[i] = view(VIEWS[i]).handle((view, error) -> null);
+        }
+        return CompletableFuture.allOf(built);
     }
 
     /**
-     * Loads a view and sets it to the content area.
+     * Shows a view in the content area, at once if it is already built, otherwise as soon as it is.
      * 
-     * @param fxml the FXML file to load
+     * @param fxml the FXML file of the view
      */
     private void loadView(String fxml) {
+        requestedView = fxml;
+        CompletableFuture<LoadedView> view = view(fxml);
+        if (view.isDone() && !view.isCompletedExceptionally()) {
+            show(fxml, view.join());
+        } else {
+            view.thenAcceptAsync(loaded -> show(fxml, loaded), Platform::runLater);
+        }
+    }
+
+    /**
+     * Gets a view, starting to build it in the background if it is not built or being built.
+     * A view that could not be built is built again the next time it is asked for.
+     *
+     * @param fxml the FXML file of the view
+     * @return the future view and its controller
+     */
+    private CompletableFuture<LoadedView> view(String fxml) {
+        return views.computeIfAbsent(fxml, key -> {
+            CompletableFuture<LoadedView> view = CompletableFuture.supplyAsync(() -> build(key), viewLoader);
+            view.exceptionally(error -> {
+                Platform.runLater(() -> views.remove(key, view));
+                error.printStackTrace();
+                return null;
+            });
+            return view;
+        });
+    }
+
+    /**
+     * Builds a view and its controller, whose initialize method starts loading its data.
+     *
+     * @param fxml the FXML file of the view
+     * @return the view and its controller
+     */
+    private LoadedView build(String fxml) {
+        long startTime = StartupProfile.now();
         try {
-            Node view = FXMLLoader.load(getClass().getResource(fxml));
-            contentArea.getChildren().setAll(view);
-        } catch (Exception e) {
-            e.printStackTrace();
+            FXMLLoader loader = new FXMLLoader(getClass().getResource(fxml));
+            Node root = loader.load();
+            System.out.println("Time taken to build " + fxml + ": " + (StartupProfile.now() - startTime) + "ms");
+            StartupProfile.record("build " + fxml, startTime); // Only kept while the application is starting
+            return new LoadedView(root, loader.getController());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Puts a built view in the content area, unless another view was asked for since, and refreshes its data.
+     *
+     * @param fxml the FXML file of the view
+     * @param view the view and its controller
+     */
+    private void show(String fxml, LoadedView view) {
+        if (!fxml.equals(requestedView)) {
+            return;
+        }
+        contentArea.getChildren().setAll(view.root);
+        if (view.controller instanceof CachedView) {
+            ((CachedView) view.controller).refresh();
         }
     }
 
     /**
      * Updates the label with the count of overdue books.
-     * Checks if the label is initialized before updating.
+     * Checks if the label is initialized before updating. Called once the storage is opened.
      */
     public void updateOverdueBooksCount() {
         // Check if the label is initialized
@@ -77,11 +178,12 @@ public class MainViewController {
             return;  // Exit the method if the label is not available
         }
 
-        // Get the number of overdue loans
-        int overdueBooksCount = loanDao.countOverdueLoans();
-        if(overdueBooksCount != 0) {
-            overdueBooksCountLabel.setText(String.valueOf(overdueBooksCount) + " ⚠");
-        }
+        // Get the number of overdue loans in the background
+        AsyncLibrary.loans(loanDao -> loanDao.countOverdueLoans()).thenAcceptAsync(overdueBooksCount -> {
+            if(overdueBooksCount != 0) {
+                overdueBooksCountLabel.setText(String.valueOf(overdueBooksCount) + " ⚠");
+            }
+        }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
     }
 
     /**
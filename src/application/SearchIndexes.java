@@ -0,0 +1,179 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import api.BookMetadataService;
+import dao.AsyncLibrary;
+import dao.Page;
+import model.Book;
+import model.BookMetadata;
+import model.User;
+import util.PrefixIndex;
+
+/**
+ * Search indexes of the users and of the books in stock, shared by the type-ahead fields of the views.
+ * <p>
+ * The users are found by last name, first name, email and phone, the books by ISBN and title. Each
+ * index is loaded page by page in the background the first time it is used, and the views then keep
+ * it up to date: {@link #userChanged(User)} after a user is added or modified, and
+ * {@link #stockChanged(String)} after a loan, a return or a new copy. The books are indexed as
+ * {@link BookChoice}s holding the titles stored locally when they are indexed, so showing them reads
+ * no metadata; the missing titles are fetched in batches and the books indexed again once they
+ * arrive. The methods can be called from any thread.
+ * </p>
+ */
+public final class SearchIndexes {
+
+    private static final PrefixIndex<User> users = new PrefixIndex<>(User::getId,
+            user -> new String[] { user.getLastName(), user.getFirstName(), user.getEmail(), user.getPhone() },
+            Comparator.comparing(User::getLastName, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(User::getFirstName, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparingInt(User::getId));
+    private static final PrefixIndex<BookChoice> books = new PrefixIndex<>(BookChoice::getIsbn,
+            book -> new String[] { book.getIsbn(), book.getTitle() },
+            Comparator.comparing(BookChoice::getIsbn));
+
+    // Guarded by the class
+    private static CompletableFuture<Void> usersLoad;
+    private static CompletableFuture<Void> booksLoad;
+
+    private SearchIndexes() {
+        // Static indexes
+    }
+
+    /**
+     * Gets the index of the users, whose load starts at the first call.
+     *
+     * @return The index of the users, possibly still loading.
+     */
+    public static PrefixIndex<User> users() {
+        loadUsers();
+        return users;
+    }
+
+    /**
+     * Gets the index of the books in stock, whose load starts at the first call.
+     *
+     * @return The index of the books, possibly still loading.
+     */
+    public static PrefixIndex<BookChoice> books() {
+        loadBooks();
+        return books;
+    }
+
+    /**
+     * Starts loading the index of the users if it is not loaded or loading.
+     *
+     * @return The load of the index.
+     */
+    public static synchronized CompletableFuture<Void> loadUsers() {
+        if (usersLoad == null || usersLoad.isCompletedExceptionally()) {
+            usersLoad = AsyncLibrary.users(userDao -> {
+                String pageToken = null;
+                do {
+                    Page<User> page = userDao.getUsersPage(pageToken, Page.DEFAULT_SIZE);
+                    users.putAll(page.getItems());
+                    pageToken = page.getNextToken();
+                } while (pageToken != null);
+                return null;
+            });
+            usersLoad.exceptionally(AsyncLibrary::logFailure);
+        }
+        return usersLoad;
+    }
+
+    /**
+     * Starts loading the index of the books in stock if it is not loaded or loading.
+     *
+     * @return The load of the index, complete once the books are indexed with their stored titles.
+     */
+    public static synchronized CompletableFuture<Void> loadBooks() {
+        if (booksLoad == null || booksLoad.isCompletedExceptionally()) {
+            booksLoad = AsyncLibrary.books(bookDao -> {
+                String pageToken = null;
+                do {
+                    Page<Book> page = bookDao.getBooksInStockPage(pageToken, Page.DEFAULT_SIZE);
+                    indexBooks(page.getItems());
+                    pageToken = page.getNextToken();
+                } while (pageToken != null);
+                return null;
+            });
+            booksLoad.exceptionally(AsyncLibrary::logFailure);
+        }
+        return booksLoad;
+    }
+
+    /**
+     * Indexes again all the books in stock, after many of them changed at once, as after an import.
+     *
+     * @return The new load of the index.
+     */
+    public static synchronized CompletableFuture<Void> reloadBooks() {
+        booksLoad = null;
+        books.clear();
+        return loadBooks();
+    }
+
+    /**
+     * Indexes a user that was added or modified.
+     *
+     * @param user The user, with its ID.
+     */
+    public static void userChanged(User user) {
+        users.put(user);
+    }
+
+    /**
+     * Indexes again a book whose stock changed: a book out of stock can no longer be found.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The update of the index.
+     */
+    public static CompletableFuture<Void> stockChanged(String isbn) {
+        CompletableFuture<Void> update = AsyncLibrary.books(bookDao -> bookDao.findBookByISBN(isbn)).thenAccept(book -> {
+            if (book != null && book.getStock() > 0) {
+                indexBooks(List.of(book));
+            } else {
+                books.remove(isbn);
+            }
+        });
+        update.exceptionally(AsyncLibrary::logFailure);
+        return update;
+    }
+
+    /**
+     * Indexes books with their stored titles, then fetches the missing titles and indexes those books again.
+     *
+     * @param page The books.
+     */
+    private static void indexBooks(List<Book> page) {
+        List<String> isbns = new ArrayList<>();
+        page.forEach(book -> isbns.add(book.getIsbn()));
+        Map<String, BookMetadata> stored = BookMetadataService.getInstance().getAll(isbns);
+
+        List<BookChoice> choices = new ArrayList<>();
+        Map<String, BookChoice> untitled = new HashMap<>();
+        for (String isbn : isbns) {
+            BookMetadata metadata = stored.get(isbn);
+            BookChoice choice = new BookChoice(isbn, metadata != null ? metadata.getTitle() : null);
+            choices.add(choice);
+            if (metadata == null) {
+                untitled.put(isbn, choice);
+            }
+        }
+        books.putAll(choices);
+
+        if (!untitled.isEmpty()) {
+            BookMetadataService.getInstance().getAllAsync(new ArrayList<>(untitled.keySet())).thenAccept(fetched -> fetched.forEach((isbn, metadata) -> {
+                if (books.get(isbn) == untitled.get(isbn)) {
+                    books.put(new BookChoice(isbn, metadata.getTitle())); // Still in stock and not replaced since
+                }
+            })).exceptionally(AsyncLibrary::logFailure);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package application;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.geometry.Pos;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import api.BookMetadataService;
+import dao.Repositories;
+import model.Book;
+import util.SchemaMigrator;
+import util.StartupProfile;
+import util.databaseManager;
+
+/**
+ * Startup of the application, from the first window to the preloaded views.
+ * <p>
+ * A splash screen is shown at once. Two steps then run in parallel in the background: the storage
+ * (loading the JDBC driver and the connection pool, migrating the schema and opening the first
+ * connections, or replaying the journal of the in-memory storage) and the parsing of the main view,
+ * which reads no data. Everything that reads data waits for the storage, so nothing queries a schema
+ * that is not migrated yet: the book metadata service, then the main view, which replaces the splash
+ * screen once the service and the parsing are done, then the other views, built in the background (see
+ * {@link MainViewController#preloadViews()}).
+ * </p>
+ * <p>
+ * If a step fails before the main view is shown, as when the journal of the in-memory storage is
+ * corrupted, the splash screen stays with the error in place of the progress bar, so the application
+ * never runs on a storage it could not open.
+ * </p>
+ * <p>
+ * Each step is timed in {@link StartupProfile}, which is written once all of them are done. With
+ * {@code -Dcybook.startup.exit=true} the application exits at that point, which makes a training run
+ * to record the classes of the startup in a class data sharing archive.
+ * </p>
+ */
+public final class StartupSequence {
+
+    private static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("cybook.startup.exit");
+
+    private final Stage stage;
+    private final Label status = new Label("Loading...");
+    private final ProgressBar progress = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+    private volatile boolean shown; // Set once the main view replaced the splash screen
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "cybook-startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the startup sequence of a window.
+     *
+     * @param stage The primary stage of the application.
+     */
+    public StartupSequence(Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Shows the splash screen and starts the steps in the background. Called on the JavaFX Application Thread.
+     */
+    public void start() {
+        StartupProfile.record("jvm and toolkit launch", 0);
+        Scene scene = StartupProfile.time("splash screen", () -> showSplash());
+
+        CompletableFuture<Void> storage = CompletableFuture.runAsync(() -> StartupProfile.time("storage", this::openStorage), executor);
+        CompletableFuture<FXMLLoader> mainView = CompletableFuture.supplyAsync(() -> StartupProfile.time("main view parsing", () -> loadMainView()), executor);
+
+        // The steps below read data, so they wait for the storage
+        CompletableFuture<Void> metadata = storage.thenRunAsync(() -> StartupProfile.time("metadata service", () -> {
+            // Books read their titles from the local metadata; the missing ones are fetched and the old ones refreshed in the background
+            Book.setMetadataSource(BookMetadataService.getInstance());
+            BookMetadataService.getInstance().startBackgroundRefresh();
+        }), executor);
+        CompletableFuture<Void> views = metadata.thenCombine(mainView, (ready, loader) -> loader)
+                .thenComposeAsync(loader -> {
+                    MainViewController controller = loader.getController();
+                    StartupProfile.time("main view shown", () -> scene.setRoot(loader.<Parent>getRoot()));
+                    shown = true;
+                    controller.updateOverdueBooksCount();
+                    StartupProfile.mark("window usable");
+                    return controller.preloadViews();
+                }, Platform::runLater);
+
+        CompletableFuture.allOf(storage, metadata, views).whenComplete((done, error) -> {
+            executor.shutdown();
+            if (error != null) {
+                Throwable cause = causeOf(error);
+                System.err.println("Error during startup: " + cause.getMessage());
+                if (!shown) {
+                    Platform.runLater(() -> showError(cause));
+                }
+            }
+            StartupProfile.finish();
+            if (EXIT_AFTER_STARTUP) {
+                Platform.exit();
+                System.exit(0);
+            }
+        });
+    }
+
+    /**
+     * Shows the window with a splash screen while the main view is loading.
+     *
+     * @return The scene of the window, whose root is replaced by the main view.
+     */
+    private Scene showSplash() {
+        Label title = new Label("CYBOOK");
+        title.setStyle("-fx-font-size: 32px; -fx-font-weight: bold; -fx-text-fill: #333;");
+        VBox splash = new VBox(20, title, progress, status);
+        splash.setAlignment(Pos.CENTER);
+
+        Scene scene = new Scene(splash);
+        // Adding stylesheet to the scene
+        scene.getStylesheets().add(getClass().getResource("../application/style.css").toExternalForm());
+        stage.setScene(scene);
+        stage.setTitle("Books Management");
+        stage.setMaximized(true);
+        stage.show();
+        return scene;
+    }
+
+    /**
+     * Replaces the progress bar of the splash screen with the error that stopped the startup.
+     *
+     * @param error The error.
+     */
+    private void showError(Throwable error) {
+        progress.setVisible(false);
+        progress.setManaged(false);
+        status.setText("Startup failed: " + error.getMessage());
+        status.setStyle("-fx-text-fill: red;");
+    }
+
+    /**
+     * Gets the error that failed a step, without the wrappers of the futures and of the static initializers.
+     *
+     * @param error The error of a future.
+     * @return The error thrown by the step.
+     */
+    private static Throwable causeOf(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExceptionInInitializerError) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Opens the storage: the journal of the in-memory storage is replayed when the repositories are
+     * created, while the MySQL storage loads its driver, brings the schema up to date and opens its first connections.
+     */
+    private void openStorage() {
+        StartupProfile.time("repositories", () -> Repositories.loans());
+        if (!Repositories.isInMemory()) {
+            StartupProfile.time("jdbc driver and pool", () -> databaseManager.getPool());
+            StartupProfile.time("schema migration", SchemaMigrator::migrate);
+            StartupProfile.time("connection warm-up", databaseManager::warmUp);
+        }
+    }
+
+    /**
+     * Parses the main view off the JavaFX Application Thread, which JavaFX allows before it is in a scene.
+     *
+     * @return The loader holding the main view and its controller.
+     */
+    private FXMLLoader loadMainView() {
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("MainView.fxml"));
+            loader.load();
+            return loader;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package application;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.VBox;
+
+/**
+ * Text field that suggests items while typing, to select one among many users or books without
+ * loading them all in a ComboBox.
+ * <p>
+ * Each change of the text runs the search given with {@link #setSearch(BiFunction)}, usually a
+ * {@link util.PrefixIndex} from {@link SearchIndexes}, which is fast enough to run on the JavaFX
+ * Application Thread at each key. The suggestions are listed under the field; the down arrow moves
+ * into the list, Enter or a click selects a suggestion and Escape closes the list. Enter in the field
+ * selects the first suggestion. Typing again clears the selected item.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public class TypeAheadField<T> extends VBox {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final TextField editor = new TextField();
+    private final ListView<T> suggestions = new ListView<>();
+    private final ObjectProperty<T> selectedItem = new SimpleObjectProperty<>(this, "selectedItem");
+    private BiFunction<String, Integer, List<T>> search = (query, limit) -> List.of();
+    private Function<T, String> converter = String::valueOf;
+    private int limit = DEFAULT_LIMIT;
+    private boolean choosing; // Set while the text is replaced by the selected item, which is not a search
+
+    /**
+     * Creates an empty field without search.
+     */
+    public TypeAheadField() {
+        super(2);
+        suggestions.setCellFactory(list -> new ListCell<T>() {
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : converter.apply(item));
+            }
+        });
+        suggestions.setPrefHeight(24 * DEFAULT_LIMIT);
+        hideSuggestions();
+        getChildren().addAll(editor, suggestions);
+
+        editor.textProperty().addListener((obs, oldText, newText) -> {
+            if (!choosing) {
+                selectedItem.set(null);
+                showSuggestions(newText);
+            }
+        });
+        editor.setOnAction(event -> {
+            if (!suggestions.getItems().isEmpty()) {
+                choose(suggestions.getItems().get(0));
+            }
+        });
+        editor.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.DOWN && suggestions.isVisible()) {
+                suggestions.requestFocus();
+                suggestions.getSelectionModel().selectFirst();
+                event.consume();
+            } else if (event.getCode() == KeyCode.ESCAPE) {
+                hideSuggestions();
+            }
+        });
+        suggestions.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ENTER) {
+                choose(suggestions.getSelectionModel().getSelectedItem());
+                event.consume();
+            } else if (event.getCode() == KeyCode.ESCAPE) {
+                hideSuggestions();
+                editor.requestFocus();
+            }
+        });
+        suggestions.setOnMouseClicked(event -> choose(suggestions.getSelectionModel().getSelectedItem()));
+    }
+
+    /**
+     * Sets the search giving the suggestions.
+     *
+     * @param search The search, given the text typed and the maximum number of items, returning the best items first.
+     */
+    public void setSearch(BiFunction<String, Integer, List<T>> search) {
+        this.search = search;
+    }
+
+    /**
+     * Sets how an item is shown in the suggestions and in the field once selected.
+     *
+     * @param converter The text of an item.
+     */
+    public void setConverter(Function<T, String> converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Sets the maximum number of suggestions.
+     *
+     * @param limit The maximum number of suggestions, 10 by default.
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the text shown when the field is empty.
+     *
+     * @return The prompt text.
+     */
+    public String getPromptText() {
+        return editor.getPromptText();
+    }
+
+    /**
+     * Sets the text shown when the field is empty.
+     *
+     * @param promptText The prompt text.
+     */
+    public void setPromptText(String promptText) {
+        editor.setPromptText(promptText);
+    }
+
+    /**
+     * Gets the selected item property, to listen to the selection.
+     *
+     * @return The selected item property, null while no suggestion is selected.
+     */
+    public ObjectProperty<T> selectedItemProperty() {
+        return selectedItem;
+    }
+
+    /**
+     * Gets the selected item.
+     *
+     * @return The selected item, or null if none is selected.
+     */
+    public T getSelectedItem() {
+        return selectedItem.get();
+    }
+
+    /**
+     * Selects an item and shows it in the field.
+     *
+     * @param item The item, or null to clear the field.
+     */
+    public void setSelectedItem(T item) {
+        choosing = true;
+        try {
+            editor.setText(item != null ? converter.apply(item) : "");
+            editor.positionCaret(editor.getText().length());
+        } finally {
+            choosing = false;
+        }
+        selectedItem.set(item);
+        hideSuggestions();
+    }
+
+    /**
+     * Clears the field and the selection.
+     */
+    public void clear() {
+        setSelectedItem(null);
+    }
+
+    /**
+     * Selects a suggestion and gives the focus back to the field.
+     *
+     * @param item The suggestion, ignored if null.
+     */
+    private void choose(T item) {
+        if (item != null) {
+            setSelectedItem(item);
+            editor.requestFocus();
+        }
+    }
+
+    /**
+     * Lists the suggestions for a text, or hides the list if there are none.
+     *
+     * @param text The text typed.
+     */
+    private void showSuggestions(String text) {
+        List<T> items = text == null || text.isBlank() ? List.of() : search.apply(text, limit);
+        suggestions.setItems(FXCollections.observableArrayList(items));
+        boolean show = !items.isEmpty();
+        suggestions.setVisible(show);
+        suggestions.setManaged(show);
+    }
+
+    /**
+     * Hides the suggestions.
+     */
+    private void hideSuggestions() {
+        suggestions.setItems(FXCollections.observableArrayList());
+        suggestions.setVisible(false);
+        suggestions.setManaged(false);
+    }
+}
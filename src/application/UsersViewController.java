@@ -3,22 +3,23 @@ package application;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Label;
-import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextArea;
-import dao.UserDao;
-import dao.LoanDao;
+import api.BookMetadataService;
+import dao.AsyncLibrary;
 import model.Loan;
 import model.User;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Comparator;
 
 /**
  * Controller class for managing user-related operations in the application.
+ * Database calls run through {@link AsyncLibrary}; their results are applied on the JavaFX Application Thread.
+ * The users are found by typing in fields searching {@link SearchIndexes#users()}, which this view updates
+ * when it adds or modifies a user. The view is kept once built and has nothing to reload when shown again.
  */
-public class UsersViewController {
+public class UsersViewController implements CachedView {
     @FXML private TextField lastNameField; // TextField for entering the user's last name
     @FXML private TextField firstNameField; // TextField for entering the user's first name
     @FXML private TextField emailField; // TextField for entering the user's email
@@ -29,14 +30,11 @@ public class UsersViewController {
     @FXML private TextField modEmailField; // TextField for modifying the user's email
     @FXML private TextField modAddressField; // TextField for modifying the user's address
     @FXML private TextField modPhoneField; // TextField for modifying the user's phone number
-    @FXML private ComboBox<User> modUserComboBox; // ComboBox for selecting a user to modify
-    @FXML private ComboBox<User> searchUserComboBox; // ComboBox for selecting a user to search for
+    @FXML private TypeAheadField<User> modUserField; // Field for finding a user to modify
+    @FXML private TypeAheadField<User> searchUserField; // Field for finding a user to search for
     @FXML private Label userResponseLabel; // Label to display responses for user-related actions
     @FXML private Label updateResponseLabel; // Label to display responses for update actions
     @FXML private TextArea userInfoTextArea; // TextArea to display detailed user information
-
-    private UserDao userDao = new UserDao();
-    private LoanDao loanDao = new LoanDao();
     
     /**
      * Default constructor.
@@ -47,28 +45,29 @@ public class UsersViewController {
 
     /**
      * Called to initialize a controller after its root element has been completely processed.
-     * Loads the users into the ComboBoxes.
+     * Connects the user fields to the index of the users.
      */
     public void initialize() {
-        loadUsers();
+        modUserField.setSearch(SearchIndexes.users()::search);
+        searchUserField.setSearch(SearchIndexes.users()::search);
+        modUserField.selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
+            if (newSelection != null) {
+                // The fields start from the current values of the user
+                modLastNameField.setText(newSelection.getLastName());
+                modFirstNameField.setText(newSelection.getFirstName());
+                modEmailField.setText(newSelection.getEmail());
+                modAddressField.setText(newSelection.getAddress());
+                modPhoneField.setText(newSelection.getPhone());
+            }
+        });
     }
 
     /**
-     * Loads users from the database and populates the ComboBoxes.
+     * Nothing to reload: the index of the users is kept up to date.
      */
-    private void loadUsers() {
-        List<User> users = userDao.getAllUsers();
-        users.sort(Comparator.comparing(User::getLastName)
-                .thenComparing(User::getFirstName));
-
-        ObservableList<User> userObservableList = FXCollections.observableArrayList(users);
-        modUserComboBox.setItems(userObservableList);
-        searchUserComboBox.setItems(userObservableList);
-
-        if (!users.isEmpty()) {
-            modUserComboBox.getSelectionModel().selectFirst();
-            searchUserComboBox.getSelectionModel().selectFirst();
-        }
+    @Override
+    public void refresh() {
+        // The users are searched in the shared index when typing
     }
 
     /**
@@ -83,14 +82,16 @@ public class UsersViewController {
         String phone = phoneField.getText().trim();
         if (validateUserData(firstName, lastName, email, address, phone)) {
             User newUser = new User(0, lastName, firstName, email, address, phone);
-            boolean isAddedSuccessfully = userDao.addUser(newUser);  // Supposes this method returns true if the user is successfully added
-            if (isAddedSuccessfully) {
-                updateResponseLabel(userResponseLabel, "User successfully added!", true);
-                clearUserFields();
-                loadUsers();
-            } else {
-                updateResponseLabel(userResponseLabel, "Error adding user.", false);
-            }
+            AsyncLibrary.users(userDao -> userDao.addUser(newUser)).thenAcceptAsync(isAddedSuccessfully -> {
+                if (isAddedSuccessfully) {
+                    DataVersions.changed(DataVersions.Data.USERS);
+                    SearchIndexes.userChanged(newUser); // Found at once by its ID set on adding
+                    updateResponseLabel(userResponseLabel, "User successfully added!", true);
+                    clearUserFields();
+                } else {
+                    updateResponseLabel(userResponseLabel, "Error adding user.", false);
+                }
+            }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
         } else {
             updateResponseLabel(userResponseLabel, "Please fill in all fields correctly.", false);
         }
@@ -115,22 +116,22 @@ public class UsersViewController {
      */
     @FXML
     private void handleUpdateUser() {
-        User selectedUser = modUserComboBox.getSelectionModel().getSelectedItem();
+        User selectedUser = modUserField.getSelectedItem();
         if (selectedUser != null) {
-            selectedUser.setFirstName(modFirstNameField.getText());
-            selectedUser.setLastName(modLastNameField.getText());
-            selectedUser.setEmail(modEmailField.getText());
-            selectedUser.setAddress(modAddressField.getText());
-            selectedUser.setPhone(modPhoneField.getText());
-
-            boolean isUpdatedSuccessfully = userDao.updateUser(selectedUser);  // Supposes this method returns true if the update is successful
-            if (isUpdatedSuccessfully) {
-                updateResponseLabel(updateResponseLabel, "Changes saved successfully.", true);
-                loadUsers();
-            } else {
-                updateResponseLabel(updateResponseLabel, "Error saving changes.", false);
-                loadUsers();
-            }
+            // The indexed user is only replaced once the changes are saved
+            User modifiedUser = new User(selectedUser.getId(), modLastNameField.getText(), modFirstNameField.getText(),
+                    modEmailField.getText(), modAddressField.getText(), modPhoneField.getText());
+
+            AsyncLibrary.users(userDao -> userDao.updateUser(modifiedUser)).thenAcceptAsync(isUpdatedSuccessfully -> {
+                if (isUpdatedSuccessfully) {
+                    DataVersions.changed(DataVersions.Data.USERS);
+                    SearchIndexes.userChanged(modifiedUser);
+                    modUserField.setSelectedItem(modifiedUser);
+                    updateResponseLabel(updateResponseLabel, "Changes saved successfully.", true);
+                } else {
+                    updateResponseLabel(updateResponseLabel, "Error saving changes.", false);
+                }
+            }, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
         }
     }
 
@@ -139,7 +140,7 @@ public class UsersViewController {
      */
     @FXML
     private void handleSearchUserAction() {
-        User selectedUser = searchUserComboBox.getSelectionModel().getSelectedItem();
+        User selectedUser = searchUserField.getSelectedItem();
         if (selectedUser != null) {
             displayUserInfo(selectedUser);
         } else {
@@ -163,21 +164,28 @@ public class UsersViewController {
      * @param user the user to display information about
      */
     private void displayUserInfo(User user) {
-        StringBuilder userInfo = new StringBuilder();
-        userInfo.append(String.format("Name: %s %s\nEmail: %s\nAddress: %s\nPhone: %s\n", 
-            user.getFirstName(), user.getLastName(), user.getEmail(), user.getAddress(), user.getPhone()));
-        List<Loan> loans = loanDao.getLoansByUser(user.getId());
-        if (!loans.isEmpty()) {
-            userInfo.append("Loans:\n");
-            for (Loan loan : loans) {
-                userInfo.append(String.format("ISBN: %s, Book: %s %s Loan Date: %s, Due Date: %s, %s\n",
-                    loan.getBook().getIsbn(), loan.getBook().getTitle(), loan.getBook().getAuthor(), 
-                    loan.getLoanDate().toString(), loan.getDueDate().toString(), formatReturnStatus(loan.getReturned())));
+        // The loans and the titles come from the database, so the text is built in the background
+        AsyncLibrary.loans(loanDao -> {
+            StringBuilder userInfo = new StringBuilder();
+            userInfo.append(String.format("Name: %s %s\nEmail: %s\nAddress: %s\nPhone: %s\n", 
+                user.getFirstName(), user.getLastName(), user.getEmail(), user.getAddress(), user.getPhone()));
+            List<Loan> loans = loanDao.getLoansByUser(user.getId());
+            // Load the titles of all the borrowed books with one lookup
+            List<String> isbns = new ArrayList<>();
+            loans.forEach(loan -> isbns.add(loan.getBook().getIsbn()));
+            BookMetadataService.getInstance().getAll(isbns);
+            if (!loans.isEmpty()) {
+                userInfo.append("Loans:\n");
+                for (Loan loan : loans) {
+                    userInfo.append(String.format("ISBN: %s, Book: %s %s Loan Date: %s, Due Date: %s, %s\n",
+                        loan.getBook().getIsbn(), loan.getBook().getTitle(), loan.getBook().getAuthor(), 
+                        loan.getLoanDate().toString(), loan.getDueDate().toString(), formatReturnStatus(loan.getReturned())));
+                }
+            } else {
+                userInfo.append("No current loans.");
             }
-        } else {
-            userInfo.append("No current loans.");
-        }
-        userInfoTextArea.setText(userInfo.toString());
+            return userInfo.toString();
+        }).thenAcceptAsync(userInfoTextArea::setText, Platform::runLater).exceptionally(AsyncLibrary::logFailure);
     }
 
     /**
@@ -0,0 +1,113 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import model.User;
+import util.PrefixIndex;
+
+/**
+ * Latency benchmark of the type-ahead search of the users.
+ * <p>
+ * It indexes {@code -Dbench.users} synthetic users (50,000 by default) with the fields and order of
+ * {@code application.SearchIndexes}, then times each keystroke of typed queries: names with and without
+ * accents, first and last names, emails and phone numbers with and without spaces. It exits with
+ * status 1 if the 95th percentile of a query is above {@code -Dbench.maxMicros} (1,000 by default),
+ * the budget of a search run on the JavaFX Application Thread at each key.
+ * </p>
+ * <pre>
+ * java bench.PrefixIndexBenchmark
+ * </pre>
+ * <p>
+ * The number of timed searches of each keystroke is set with {@code -Dbench.iterations}.
+ * </p>
+ */
+public class PrefixIndexBenchmark {
+
+    private static final int USERS = Integer.getInteger("bench.users", 50_000);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 200);
+    private static final int MAX_MICROS = Integer.getInteger("bench.maxMicros", 1_000);
+    private static final int WARM_UP = 500; // Searches of each keystroke before timing, so the search is compiled
+    private static final int LIMIT = 10;
+
+    private static final String[] LAST_NAMES = { "Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard", "Petit", "Durand",
+            "Leroy", "Moreau", "Simon", "Laurent", "Lefèvre", "Michel", "Garcia", "David", "Bertrand", "Roux", "Vincent", "Fournier" };
+    private static final String[] FIRST_NAMES = { "Jean", "Marie", "Élodie", "Hélène", "Léa", "Hugo", "Chloé", "Noé", "Inès", "Jérôme",
+            "Zoé", "Louis", "Camille", "Gaëlle", "Théo", "Anaïs" };
+    private static final String[] QUERIES = { "lefevre", "Lefèvre", "helene m", "jerome dur", "martin l", "camille.roux", "06 12 3", "06123" };
+
+    /**
+     * Entry point of the benchmark.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        PrefixIndex<User> index = new PrefixIndex<>(User::getId,
+                user -> new String[] { user.getLastName(), user.getFirstName(), user.getEmail(), user.getPhone() },
+                Comparator.comparing(User::getLastName, String.CASE_INSENSITIVE_ORDER)
+                        .thenComparing(User::getFirstName, String.CASE_INSENSITIVE_ORDER)
+                        .thenComparingInt(User::getId));
+        List<User> users = syntheticUsers(USERS);
+        long start = System.nanoTime();
+        index.putAll(users);
+        System.out.printf("Indexed %d users in %d ms%n", index.size(), (System.nanoTime() - start) / 1_000_000);
+
+        for (int i = 0; i < WARM_UP; i++) {
+            for (String query : QUERIES) {
+                for (int length = 1; length <= query.length(); length++) {
+                    index.search(query.substring(0, length), LIMIT);
+                }
+            }
+        }
+
+        boolean failed = false;
+        for (String query : QUERIES) {
+            long worst = 0;
+            for (int length = 1; length <= query.length(); length++) {
+                String typed = query.substring(0, length);
+                long[] micros = new long[ITERATIONS];
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long t0 = System.nanoTime();
+                    index.search(typed, LIMIT);
+                    micros[i] = (System.nanoTime() - t0) / 1_000;
+                }
+                Arrays.sort(micros);
+                worst = Math.max(worst, micros[ITERATIONS * 95 / 100]);
+            }
+            List<User> found = index.search(query, LIMIT);
+            System.out.printf("  %-12s worst p95 per key %6d us  %2d results, first: %s%n",
+                    query, worst, found.size(), found.isEmpty() ? "-" : found.get(0));
+            if (worst > MAX_MICROS) {
+                System.out.println("  FAILED: above " + MAX_MICROS + " us");
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates users whose names repeat, as in a real library, with unique emails and phones.
+     *
+     * @param count The number of users.
+     * @return The users.
+     */
+    private static List<User> syntheticUsers(int count) {
+        Random random = new Random(42);
+        List<User> users = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String email = PrefixIndex.fold(firstName) + "." + PrefixIndex.fold(lastName) + id + "@example.fr";
+            String phone = random.nextBoolean()
+                    ? String.format("06%08d", random.nextInt(100_000_000))
+                    : String.format("06 %02d %02d %02d %02d", random.nextInt(100), random.nextInt(100), random.nextInt(100), random.nextInt(100));
+            users.add(new User(id, lastName, firstName, email, id + " rue de la Bibliothèque", phone));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,308 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import dao.BookDao;
+import dao.LoanDao;
+import util.SchemaMigrator;
+import util.databaseManager;
+
+/**
+ * Query-plan regression benchmark for the hot loan queries.
+ * <p>
+ * It migrates a scratch database, fills it with a synthetic dataset if it is empty, then for each
+ * query prints its {@code EXPLAIN} plan and its latency over repeated executions. It exits with
+ * status 1 if a plan reads the {@code loans} table with a full table scan, so a query change that
+ * loses its index is caught before release.
+ * </p>
+ * <p>
+ * It writes to the database, so it refuses to run unless the database name contains "bench":
+ * </p>
+ * <pre>
+ * java -Dcybook.db.url=jdbc:mysql://localhost:3306/cybook_bench bench.QueryPlanBenchmark
+ * </pre>
+ * <p>
+ * The dataset size is set with {@code -Dbench.users}, {@code -Dbench.books}, {@code -Dbench.loans}
+ * and the number of timed executions with {@code -Dbench.iterations}.
+ * </p>
+ */
+public class QueryPlanBenchmark {
+
+    private static final int USERS = Integer.getInteger("bench.users", 20_000);
+    private static final int BOOKS = Integer.getInteger("bench.books", 5_000);
+    private static final int LOANS = Integer.getInteger("bench.loans", 500_000);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 200);
+    private static final int WARM_UP = 20;
+    private static final int INSERT_BATCH = 5_000;
+
+    /**
+     * A benchmarked query, with the SQL text run by LoanDao or BookDao.
+     */
+    private static final class BenchQuery {
+        final String name;
+        final String sql;
+        final boolean timed; // Statements that modify data are only explained
+
+        BenchQuery(String name, String sql, boolean timed) {
+            this.name = name;
+            this.sql = sql;
+            this.timed = timed;
+        }
+    }
+
+    private static final BenchQuery[] QUERIES = {
+        new BenchQuery("countActiveLoansByUser", LoanDao.COUNT_ACTIVE_LOANS_SQL, true),
+        new BenchQuery("getBorrowedBooksByUser", LoanDao.BORROWED_BOOKS_SQL, true),
+        new BenchQuery("countOverdueLoans", LoanDao.COUNT_OVERDUE_LOANS_SQL, true),
+        new BenchQuery("getLateLoans", LoanDao.LATE_LOANS_SQL, true),
+        new BenchQuery("getLateLoanReport", LoanDao.LATE_LOAN_REPORT_SQL, true),
+        new BenchQuery("getLoansCountForISBN", BookDao.LOANS_COUNT_FOR_ISBN_SQL, true),
+        new BenchQuery("fetchTopBooks", LoanDao.TOP_BOOKS_SQL, true),
+        new BenchQuery("returnLoan (select)", LoanDao.FIND_OPEN_LOAN_SQL, true),
+        new BenchQuery("returnLoan", LoanDao.RETURN_LOAN_SQL, false),
+        new BenchQuery("checkout", LoanDao.RESERVE_COPY_SQL, false),
+    };
+
+    /**
+     * Constructeur par défaut.
+     */
+    public QueryPlanBenchmark() {
+        // Default constructor
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused.
+     * @throws SQLException if the database cannot be used.
+     */
+    public static void main(String[] args) throws SQLException {
+        String url = System.getProperty("cybook.db.url", "");
+        if (!url.contains("bench")) {
+            System.err.println("Refusing to write a synthetic dataset into " + url
+                    + "; point -Dcybook.db.url to a database whose name contains \"bench\".");
+            System.exit(2);
+        }
+        if (!SchemaMigrator.migrate()) {
+            System.exit(2);
+        }
+
+        boolean regression = false;
+        try (Connection conn = databaseManager.getConnection()) {
+            loadDataset(conn);
+            Random random = new Random(42);
+            for (BenchQuery query : QUERIES) {
+                Object[] params = paramsFor(query, random);
+                System.out.println("== " + query.name);
+                regression |= explain(conn, query, params);
+                if (query.timed) {
+                    time(conn, query, random);
+                }
+                System.out.println();
+            }
+        }
+        System.out.println(databaseManager.getPool());
+        if (regression) {
+            System.err.println("Query plan regression: at least one query scans the whole loans table.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fills the tables with a synthetic dataset if they are empty, then refreshes the index statistics.
+     *
+     * @param conn The connection to use.
+     * @throws SQLException if an insert fails.
+     */
+    private static void loadDataset(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM loans")) {
+            rs.next();
+            if (rs.getInt(1) > 0) {
+                System.out.println("Reusing existing dataset (" + rs.getInt(1) + " loans)");
+                return;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        Random random = new Random(7);
+        conn.setAutoCommit(false);
+        try (PreparedStatement users = conn.prepareStatement(
+                "INSERT INTO users (lastname, firstname, email, address, phone) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= USERS; i++) {
+                users.setString(1, "Lastname" + i);
+                users.setString(2, "Firstname" + i);
+                users.setString(3, "user" + i + "@example.com");
+                users.setString(4, i + " rue de la Bibliothèque");
+                users.setString(5, String.format("06%08d", i));
+                users.addBatch();
+                if (i % INSERT_BATCH == 0) {
+                    users.executeBatch();
+                }
+            }
+            users.executeBatch();
+        }
+        try (PreparedStatement books = conn.prepareStatement("INSERT INTO books (isbn, stock) VALUES (?, ?)")) {
+            for (int i = 0; i < BOOKS; i++) {
+                books.setString(1, isbn(i));
+                books.setInt(2, random.nextInt(5));
+                books.addBatch();
+                if ((i + 1) % INSERT_BATCH == 0) {
+                    books.executeBatch();
+                }
+            }
+            books.executeBatch();
+        }
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement loans = conn.prepareStatement(
+                "INSERT INTO loans (user_id, book_isbn, date_loaned, due_date, returned) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= LOANS; i++) {
+                LocalDate loaned = today.minusDays(random.nextInt(3 * 365));
+                // Popular books are borrowed more often, like in a real catalogue
+                int book = (int) Math.min(BOOKS - 1, Math.abs(random.nextGaussian()) * BOOKS / 4);
+                loans.setInt(1, 1 + random.nextInt(USERS));
+                loans.setString(2, isbn(book));
+                loans.setDate(3, java.sql.Date.valueOf(loaned));
+                loans.setDate(4, java.sql.Date.valueOf(loaned.plusWeeks(2)));
+                loans.setInt(5, loaned.isBefore(today.minusDays(40)) || random.nextInt(10) > 0 ? 1 : 0);
+                loans.addBatch();
+                if (i % INSERT_BATCH == 0) {
+                    loans.executeBatch();
+                    conn.commit();
+                }
+            }
+            loans.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE TABLE users, books, loans");
+        }
+        System.out.println("Loaded " + USERS + " users, " + BOOKS + " books and " + LOANS + " loans in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Prints the plan of a query.
+     *
+     * @param conn   The connection to use.
+     * @param query  The query.
+     * @param params The parameter values.
+     * @return true if the plan reads the loans table with a full scan.
+     * @throws SQLException if the plan cannot be read.
+     */
+    private static boolean explain(Connection conn, BenchQuery query, Object[] params) throws SQLException {
+        boolean fullScan = false;
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + query.sql)) {
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    StringBuilder row = new StringBuilder("  ");
+                    for (String column : Arrays.asList("table", "type", "key", "rows", "Extra")) {
+                        row.append(column).append('=').append(rs.getString(column)).append("  ");
+                    }
+                    System.out.println(row);
+                    if ("loans".equals(rs.getString("table")) && "ALL".equals(rs.getString("type"))) {
+                        fullScan = true;
+                    }
+                }
+            }
+        }
+        if (fullScan) {
+            System.out.println("  !! full scan of loans");
+        }
+        return fullScan;
+    }
+
+    /**
+     * Times a query over {@link #ITERATIONS} executions with random parameters, after a warm-up.
+     *
+     * @param conn   The connection to use.
+     * @param query  The query.
+     * @param random The parameter generator.
+     * @throws SQLException if an execution fails.
+     */
+    private static void time(Connection conn, BenchQuery query, Random random) throws SQLException {
+        List<Long> samples = new ArrayList<>(ITERATIONS);
+        try (PreparedStatement pstmt = conn.prepareStatement(query.sql)) {
+            for (int i = 0; i < WARM_UP + ITERATIONS; i++) {
+                bind(pstmt, paramsFor(query, random));
+                long start = System.nanoTime();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Read the whole result
+                    }
+                }
+                if (i >= WARM_UP) {
+                    samples.add(System.nanoTime() - start);
+                }
+            }
+        }
+        samples.sort(null);
+        double avg = samples.stream().mapToLong(Long::longValue).average().orElse(0);
+        System.out.printf("  latency over %d runs: avg=%.3fms p50=%.3fms p95=%.3fms max=%.3fms%n",
+                samples.size(), avg / 1e6, samples.get(samples.size() / 2) / 1e6,
+                samples.get((int) (samples.size() * 0.95)) / 1e6, samples.get(samples.size() - 1) / 1e6);
+    }
+
+    /**
+     * Generates parameter values for a query.
+     *
+     * @param query  The query.
+     * @param random The generator.
+     * @return The parameter values, in order.
+     */
+    private static Object[] paramsFor(BenchQuery query, Random random) {
+        int user = 1 + random.nextInt(USERS);
+        String book = isbn(random.nextInt(BOOKS));
+        switch (query.name) {
+            case "countActiveLoansByUser":
+            case "getBorrowedBooksByUser":
+                return new Object[] { user };
+            case "getLoansCountForISBN":
+                return new Object[] { book };
+            case "fetchTopBooks":
+                return new Object[] { 30, 3 };
+            case "returnLoan (select)":
+                return new Object[] { user, book };
+            case "returnLoan":
+                return new Object[] { 1 + random.nextInt(LOANS) };
+            case "checkout":
+                return new Object[] { book, user, 3 };
+            default:
+                return new Object[0];
+        }
+    }
+
+    /**
+     * Binds parameter values to a statement.
+     *
+     * @param pstmt  The statement.
+     * @param params The values.
+     * @throws SQLException if a value cannot be bound.
+     */
+    private static void bind(PreparedStatement pstmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            pstmt.setObject(i + 1, params[i]);
+        }
+    }
+
+    /**
+     * Builds the synthetic ISBN of the n-th book.
+     *
+     * @param n The book number.
+     * @return A 13-character ISBN-like key.
+     */
+    private static String isbn(int n) {
+        return String.format("978%010d", n);
+    }
+}
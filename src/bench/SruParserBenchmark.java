@@ -0,0 +1,250 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import api.SruRecordParser;
+import model.BnfRecord;
+
+/**
+ * Latency and allocation benchmark of the parsing of SRU responses.
+ * <p>
+ * It compares the former DOM parsing of {@code BNFApiClient} (body buffered as a string, a new
+ * {@link DocumentBuilderFactory} per response, then one scan of every data field of the record per
+ * extracted field) with the streaming {@link SruRecordParser}. Both must read the same records.
+ * </p>
+ * <p>
+ * Recorded responses are given as file arguments, for example pages saved with
+ * {@code curl -o page1.xml "http://catalogue.bnf.fr/api/SRU?version=1.2&operation=searchRetrieve&query=bib.title%20all%20%22paris%22&maximumRecords=50"}:
+ * </p>
+ * <pre>
+ * java bench.SruParserBenchmark page1.xml page2.xml
+ * </pre>
+ * <p>
+ * Without arguments it generates a page of {@code -Dbench.records} records (50 by default) with the
+ * same structure as the BNF UNIMARC records. The number of timed parses is set with {@code -Dbench.iterations}.
+ * Allocation is measured on the current thread, so it needs a HotSpot-based JVM.
+ * </p>
+ */
+public class SruParserBenchmark {
+
+    private static final int RECORDS = Integer.getInteger("bench.records", 50);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 500);
+    private static final int WARM_UP = 200;
+
+    /**
+     * A parser under test.
+     */
+    private interface PageParser {
+        List<BnfRecord> parse(byte[] page) throws Exception;
+    }
+
+    /**
+     * Entry point of the benchmark.
+     *
+     * @param args The recorded SRU responses to parse.
+     * @throws Exception If a page cannot be read or parsed.
+     */
+    public static void main(String[] args) throws Exception {
+        List<byte[]> pages = new ArrayList<>();
+        if (args.length == 0) {
+            pages.add(syntheticPage(RECORDS).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Synthetic page of " + RECORDS + " records");
+        } else {
+            for (String file : args) {
+                pages.add(Files.readAllBytes(Paths.get(file)));
+            }
+        }
+
+        for (int i = 0; i < pages.size(); i++) {
+            byte[] page = pages.get(i);
+            List<BnfRecord> dom = parseDom(page);
+            List<BnfRecord> stax = parseStreaming(page);
+            checkSameRecords(dom, stax);
+            System.out.printf("Page %d: %d bytes, %d records%n", i + 1, page.length, stax.size());
+            measure("DOM", SruParserBenchmark::parseDom, page);
+            measure("StAX", SruParserBenchmark::parseStreaming, page);
+        }
+    }
+
+    /**
+     * Times a parser on a page and prints its median and 95th percentile latency and its allocation per parse.
+     *
+     * @param name   The name of the parser.
+     * @param parser The parser.
+     * @param page   The page.
+     * @throws Exception If the page cannot be parsed.
+     */
+    private static void measure(String name, PageParser parser, byte[] page) throws Exception {
+        for (int i = 0; i < WARM_UP; i++) {
+            parser.parse(page);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] nanos = new long[ITERATIONS];
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            parser.parse(page);
+            nanos[i] = System.nanoTime() - start;
+        }
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+        Arrays.sort(nanos);
+        System.out.printf("  %-5s median %8.1f us  p95 %8.1f us  allocated %,10d bytes/parse%n",
+                name, nanos[ITERATIONS / 2] / 1000.0, nanos[ITERATIONS * 95 / 100] / 1000.0, allocated);
+    }
+
+    /**
+     * Parses a page with the streaming parser.
+     *
+     * @param page The page.
+     * @return The records.
+     * @throws Exception If the page cannot be parsed.
+     */
+    private static List<BnfRecord> parseStreaming(byte[] page) throws Exception {
+        List<BnfRecord> records = new ArrayList<>();
+        try (InputStream in = new ByteArrayInputStream(page)) {
+            SruRecordParser.parse(in, Integer.MAX_VALUE, records::add);
+        }
+        return records;
+    }
+
+    /**
+     * Parses a page the way BNFApiClient did before the streaming parser.
+     *
+     * @param page The page.
+     * @return The records.
+     * @throws Exception If the page cannot be parsed.
+     */
+    private static List<BnfRecord> parseDom(byte[] page) throws Exception {
+        String body = new String(page, StandardCharsets.UTF_8);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(new InputSource(new StringReader(body)));
+        List<BnfRecord> records = new ArrayList<>();
+        NodeList recordNodes = doc.getElementsByTagNameNS("*", "record");
+        for (int i = 0; i < recordNodes.getLength(); i++) {
+            Element record = (Element) recordNodes.item(i);
+            if (record.getElementsByTagNameNS("*", "record").getLength() > 0) {
+                continue; // SRU envelope around the UNIMARC record
+            }
+            records.add(new BnfRecord(extractField(record, "010", 'a'), extractField(record, "200", 'a'),
+                    extractField(record, "700", 'a'), extractField(record, "205", 'a'),
+                    extractField(record, "210", 'd'), extractField(record, "225", 'a')));
+        }
+        return records;
+    }
+
+    /**
+     * Extracts a subfield by scanning every data field of a record, as BNFApiClient did.
+     *
+     * @param record       The record.
+     * @param tag          The tag of the data field.
+     * @param subfieldCode The code of the subfield.
+     * @return The text of the subfield, or an empty string.
+     */
+    private static String extractField(Element record, String tag, char subfieldCode) {
+        NodeList dataFields = record.getElementsByTagNameNS("*", "datafield");
+        for (int i = 0; i < dataFields.getLength(); i++) {
+            Element field = (Element) dataFields.item(i);
+            if (field.getAttribute("tag").equals(tag)) {
+                NodeList subFields = field.getElementsByTagNameNS("*", "subfield");
+                for (int j = 0; j < subFields.getLength(); j++) {
+                    Element subField = (Element) subFields.item(j);
+                    if (subField.getAttribute("code").charAt(0) == subfieldCode) {
+                        return subField.getTextContent().trim();
+                    }
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Fails if the two parsers did not read the same records.
+     *
+     * @param expected The records read by the DOM parser.
+     * @param actual   The records read by the streaming parser.
+     */
+    private static void checkSameRecords(List<BnfRecord> expected, List<BnfRecord> actual) {
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException("DOM read " + expected.size() + " records, StAX read " + actual.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            BnfRecord a = expected.get(i);
+            BnfRecord b = actual.get(i);
+            if (!a.getIsbn().equals(b.getIsbn()) || !a.getTitle().equals(b.getTitle()) || !a.getAuthor().equals(b.getAuthor())
+                    || !a.getEdition().equals(b.getEdition()) || !a.getPublicationDate().equals(b.getPublicationDate())
+                    || !a.getCollection().equals(b.getCollection())) {
+                throw new IllegalStateException("Record " + (i + 1) + " differs: " + a + " / " + b);
+            }
+        }
+    }
+
+    /**
+     * Generates an SRU response in the layout of the BNF, with the control and data fields of a typical record.
+     *
+     * @param records The number of records.
+     * @return The response.
+     */
+    private static String syntheticPage(int records) {
+        StringBuilder xml = new StringBuilder(records * 4096);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+           .append("<srw:searchRetrieveResponse xmlns:srw=\"http://www.loc.gov/zing/srw/\" xmlns:mxc=\"info:lc/xmlns/marcxchange-v2\">")
+           .append("<srw:version>1.2</srw:version><srw:numberOfRecords>").append(records * 10).append("</srw:numberOfRecords><srw:records>");
+        for (int r = 0; r < records; r++) {
+            xml.append("<srw:record><srw:recordSchema>unimarcxchange</srw:recordSchema><srw:recordPacking>xml</srw:recordPacking>")
+               .append("<srw:recordData><mxc:record format=\"Unimarc\" type=\"Bibliographic\" id=\"ark:/12148/cb").append(40000000 + r).append("\">")
+               .append("<mxc:leader>     cam  22        450 </mxc:leader>")
+               .append("<mxc:controlfield tag=\"001\">FRBNF").append(40000000 + r).append("</mxc:controlfield>")
+               .append("<mxc:controlfield tag=\"003\">http://catalogue.bnf.fr/ark:/12148/cb").append(40000000 + r).append("</mxc:controlfield>")
+               .append("<mxc:controlfield tag=\"005\">20230101120000.0</mxc:controlfield>");
+            datafield(xml, "010", "a", "978-2-07-0" + String.format("%05d", r) + "-1", "b", "br.", "d", "9,50 EUR");
+            datafield(xml, "020", "a", "FR", "b", "0" + r);
+            datafield(xml, "100", "a", "20230101d2023    m  y0frey50      ba");
+            datafield(xml, "101", "a", "fre");
+            datafield(xml, "102", "a", "FR");
+            datafield(xml, "105", "a", "||||z   00|y|");
+            datafield(xml, "106", "a", "r");
+            datafield(xml, "181", "6", "z01", "c", "txt", "2", "rdacontent");
+            datafield(xml, "200", "a", "Titre du livre numéro " + r, "b", "Texte imprimé", "f", "Prénom Nom", "g", "préface de Autre Nom");
+            datafield(xml, "205", "a", (r % 5 + 1) + "e édition");
+            datafield(xml, "210", "a", "Paris", "c", "Éditeur", "d", String.valueOf(1950 + r % 70));
+            datafield(xml, "215", "a", "1 vol. (" + (100 + r) + " p.)", "c", "ill.", "d", "18 cm");
+            if (r % 3 == 0) {
+                datafield(xml, "225", "a", "Collection " + r % 7, "v", String.valueOf(r));
+            }
+            datafield(xml, "330", "a", "Résumé du livre numéro " + r + ". Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.");
+            datafield(xml, "606", "3", "11930000", "a", "Sujet", "2", "rameau");
+            datafield(xml, "676", "a", "843.914", "v", "23");
+            datafield(xml, "700", "3", "1190000" + r, "o", "ISNI0000000000000000", "a", "Nom" + r, "b", "Prénom", "f", "1913-1960", "4", "0070");
+            datafield(xml, "702", "a", "Autre Nom", "b", "A.", "4", "0080");
+            datafield(xml, "801", "a", "FR", "b", "FR-751131015", "c", "20230101", "g", "AFNOR", "h", "FRBNF" + (40000000 + r));
+            xml.append("</mxc:record></srw:recordData><srw:recordPosition>").append(r + 1).append("</srw:recordPosition></srw:record>");
+        }
+        xml.append("</srw:records><srw:nextRecordPosition>").append(records + 1).append("</srw:nextRecordPosition></srw:searchRetrieveResponse>");
+        return xml.toString();
+    }
+
+    private static void datafield(StringBuilder xml, String tag, String... codesAndValues) {
+        xml.append("<mxc:datafield tag=\"").append(tag).append("\" ind1=\" \" ind2=\" \">");
+        for (int i = 0; i < codesAndValues.length; i += 2) {
+            xml.append("<mxc:subfield code=\"").append(codesAndValues[i]).append("\">").append(codesAndValues[i + 1]).append("</mxc:subfield>");
+        }
+        xml.append("</mxc:datafield>");
+    }
+}
@@ -0,0 +1,227 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the SRU service of the BNF, to test and measure the client without the network.
+ * <p>
+ * It answers {@code searchRetrieve} requests on {@code /SRU} with UNIMARC records in the layout of the BNF:
+ * </p>
+ * <ul>
+ * <li>a query made of {@code bib.isbn adj "..."} clauses joined by {@code or} returns one record per
+ * ISBN, except the ISBNs whose last character is 0, which are unknown. The ISBN of the record is
+ * written with a hyphen, as the BNF does, so the client has to normalize it;</li>
+ * <li>any other query returns {@code -Dstub.searchResults} records (237 by default) titled after the query.</li>
+ * </ul>
+ * <p>
+ * {@code startRecord} and {@code maximumRecords} (20 by default) page the results. Each response is
+ * delayed by {@code -Dstub.latencyMillis} (0 by default). Start it and point the application to it:
+ * </p>
+ * <pre>
+ * java bench.StubSruServer 8089
+ * java -Dcybook.bnf.url=http://localhost:8089/SRU application.Main
+ * </pre>
+ */
+public class StubSruServer {
+
+    private static final Pattern ISBN_CLAUSE = Pattern.compile("bib\\.isbn\\s+adj\\s+\"([^\"]*)\"");
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]*)\"");
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final HttpServer server;
+    private final int latencyMillis;
+    private final int searchResults;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Creates a server on a port of the loopback interface.
+     *
+     * @param port          The port, or 0 for any free port.
+     * @param latencyMillis The delay added to each response.
+     * @param searchResults The number of records matching a query that is not an ISBN lookup.
+     * @throws IOException If the port cannot be bound.
+     */
+    public StubSruServer(int port, int latencyMillis, int searchResults) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.searchResults = searchResults;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.createContext("/SRU", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stub-sru");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Starts the server on the given port, 8089 by default, until the process is stopped.
+     *
+     * @param args The port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        StubSruServer stub = new StubSruServer(port, Integer.getInteger("stub.latencyMillis", 0),
+                Integer.getInteger("stub.searchResults", 237));
+        stub.start();
+        System.out.println("Stub SRU server listening on " + stub.getUrl());
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets the address to set in {@code cybook.bnf.url}.
+     *
+     * @return The URL of the SRU endpoint.
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/SRU";
+    }
+
+    /**
+     * Gets the number of requests answered since the start.
+     *
+     * @return The number of requests.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        Map<String, String> params = parseParameters(exchange.getRequestURI().getRawQuery());
+        String query = params.getOrDefault("query", "");
+        int startRecord = Math.max(1, parseInt(params.get("startRecord"), 1));
+        int pageSize = Math.max(1, parseInt(params.get("maximumRecords"), DEFAULT_PAGE_SIZE));
+
+        List<String[]> matches = new ArrayList<>(); // isbn, title, author
+        Matcher isbnClauses = ISBN_CLAUSE.matcher(query);
+        boolean isbnLookup = false;
+        while (isbnClauses.find()) {
+            isbnLookup = true;
+            String isbn = isbnClauses.group(1).replace("-", "").trim();
+            if (!isbn.isEmpty() && !isbn.endsWith("0")) {
+                matches.add(new String[] {isbn.substring(0, 3) + "-" + isbn.substring(3), "Livre " + isbn, "Auteur " + isbn.substring(isbn.length() - 4)});
+            }
+        }
+        if (!isbnLookup) {
+            Matcher words = QUOTED.matcher(query);
+            String subject = words.find() ? words.group(1) : query;
+            for (int i = 1; i <= searchResults; i++) {
+                String isbn = withCheckDigit(String.format("9782%08d", i));
+                matches.add(new String[] {isbn.substring(0, 3) + "-" + isbn.substring(3), subject + " " + i, "Auteur " + i});
+            }
+        }
+
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int end = Math.min(matches.size(), startRecord - 1 + pageSize);
+        StringBuilder xml = new StringBuilder(4096);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+           .append("<srw:searchRetrieveResponse xmlns:srw=\"http://www.loc.gov/zing/srw/\" xmlns:mxc=\"info:lc/xmlns/marcxchange-v2\">")
+           .append("<srw:version>1.2</srw:version><srw:numberOfRecords>").append(matches.size()).append("</srw:numberOfRecords><srw:records>");
+        for (int i = startRecord - 1; i < end; i++) {
+            String[] match = matches.get(i);
+            xml.append("<srw:record><srw:recordSchema>unimarcxchange</srw:recordSchema><srw:recordPacking>xml</srw:recordPacking>")
+               .append("<srw:recordData><mxc:record format=\"Unimarc\" type=\"Bibliographic\">")
+               .append("<mxc:controlfield tag=\"001\">FRBNF").append(i + 1).append("</mxc:controlfield>");
+            datafield(xml, "010", "a", match[0], "b", "br.");
+            datafield(xml, "200", "a", match[1], "f", match[2]);
+            datafield(xml, "205", "a", "1re édition");
+            datafield(xml, "210", "a", "Paris", "c", "Éditeur", "d", String.valueOf(1950 + i % 70));
+            datafield(xml, "225", "a", "Collection " + i % 7);
+            datafield(xml, "700", "a", match[2], "b", "Prénom");
+            xml.append("</mxc:record></srw:recordData><srw:recordPosition>").append(i + 1).append("</srw:recordPosition></srw:record>");
+        }
+        xml.append("</srw:records>");
+        if (end < matches.size()) {
+            xml.append("<srw:nextRecordPosition>").append(end + 1).append("</srw:nextRecordPosition>");
+        }
+        xml.append("</srw:searchRetrieveResponse>");
+
+        byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String withCheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = first12.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return first12 + ((10 - sum % 10) % 10);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void datafield(StringBuilder xml, String tag, String... codesAndValues) {
+        xml.append("<mxc:datafield tag=\"").append(tag).append("\" ind1=\" \" ind2=\" \">");
+        for (int i = 0; i < codesAndValues.length; i += 2) {
+            xml.append("<mxc:subfield code=\"").append(codesAndValues[i]).append("\">")
+               .append(escape(codesAndValues[i + 1])).append("</mxc:subfield>");
+        }
+        xml.append("</mxc:datafield>");
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
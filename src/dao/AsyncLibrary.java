@@ -0,0 +1,228 @@
+package dao;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over the repositories, so the controllers never wait for the database on the
+ * JavaFX Application Thread.
+ * <p>
+ * Each call runs on a shared executor and returns a {@link CompletableFuture}. The executor uses
+ * virtual threads when the runtime provides them (Java 21 and later) and otherwise a fixed pool of
+ * daemon threads. At most {@code cybook.async.maxConcurrency} calls (10 by default, the size of the
+ * connection pool) run at the same time. A call takes its permit before it is submitted to the
+ * executor; the calls without a permit wait in order in a queue, without holding a thread, and each
+ * call that finishes hands its permit to the next one.
+ * </p>
+ * <p>
+ * A future that is not completed after {@code cybook.async.timeoutMillis} (30 seconds by default)
+ * fails with a {@link TimeoutException}. A future that is cancelled or times out before its call
+ * started skips the call. Cancelling a call that already started has no effect on it: it is not
+ * interrupted, so a write is never cut between its statements and its commit, and it runs to its end
+ * with its permit; only its result is discarded.
+ * </p>
+ * <p>
+ * Controllers consume the results on the FX thread with {@code thenAcceptAsync(action, Platform::runLater)}.
+ * </p>
+ */
+public final class AsyncLibrary {
+
+    private static final int MAX_CONCURRENCY = Integer.getInteger("cybook.async.maxConcurrency",
+            Integer.getInteger("cybook.db.pool.max", 10));
+    private static final long TIMEOUT_MILLIS = Long.getLong("cybook.async.timeoutMillis", 30_000);
+
+    private static final Semaphore permits = new Semaphore(MAX_CONCURRENCY);
+    private static final Queue<Call<?>> waiting = new ConcurrentLinkedQueue<>(); // Calls without a permit yet
+    private static final ExecutorService executor = createExecutor();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncLibrary::shutdown, "cybook-async-shutdown"));
+    }
+
+    private AsyncLibrary() {
+        // Static facade
+    }
+
+    /**
+     * Runs a call on the book repository.
+     *
+     * @param call The call.
+     * @param <T>  The type of the result.
+     * @return The future result.
+     */
+    public static <T> CompletableFuture<T> books(Function<BookRepository, T> call) {
+        return supply(() -> call.apply(Repositories.books()));
+    }
+
+    /**
+     * Runs a call on the loan repository.
+     *
+     * @param call The call.
+     * @param <T>  The type of the result.
+     * @return The future result.
+     */
+    public static <T> CompletableFuture<T> loans(Function<LoanRepository, T> call) {
+        return supply(() -> call.apply(Repositories.loans()));
+    }
+
+    /**
+     * Runs a call on the user repository.
+     *
+     * @param call The call.
+     * @param <T>  The type of the result.
+     * @return The future result.
+     */
+    public static <T> CompletableFuture<T> users(Function<UserRepository, T> call) {
+        return supply(() -> call.apply(Repositories.users()));
+    }
+
+    /**
+     * Runs any blocking task, such as a BNF request, with the default timeout.
+     *
+     * @param task The task.
+     * @param <T>  The type of the result.
+     * @return The future result.
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return supply(task, TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Runs any blocking task. The task starts at once if a permit is free, otherwise once the calls
+     * queued before it have started. Never blocks the caller.
+     *
+     * @param task          The task.
+     * @param timeoutMillis The time after which the future fails with a {@link TimeoutException}.
+     * @param <T>           The type of the result.
+     * @return The future result. Cancelling it skips the task if it has not started yet, and has no
+     *         effect on a task already running.
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> task, long timeoutMillis) {
+        Call<T> call = new Call<>(task);
+        if (permits.tryAcquire()) {
+            start(call);
+        } else {
+            waiting.add(call);
+            if (permits.tryAcquire()) {
+                startNext(); // A permit was released while the call was being queued
+            }
+        }
+        return call.result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reports a failed call, for use with {@code exceptionally} at the end of a chain.
+     * Cancellations are expected and not reported.
+     *
+     * @param error The failure.
+     * @return null.
+     */
+    public static Void logFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof CancellationException)) {
+            System.err.println("Background database call failed: " + cause);
+        }
+        return null;
+    }
+
+    /**
+     * Stops accepting calls and waits briefly for the running ones.
+     */
+    public static void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Submits a call holding a permit to the executor.
+     *
+     * @param call The call.
+     */
+    private static void start(Call<?> call) {
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            call.result.completeExceptionally(e);
+            startNext();
+        }
+    }
+
+    /**
+     * Hands the permit of a finished call to the first queued call, or releases it if none is waiting.
+     */
+    private static void startNext() {
+        Call<?> next = waiting.poll();
+        if (next != null) {
+            start(next);
+            return;
+        }
+        permits.release();
+        // A call queued after the poll above would otherwise wait for the next finished call
+        if (!waiting.isEmpty() && permits.tryAcquire()) {
+            startNext();
+        }
+    }
+
+    /**
+     * A task and its future result, run with a permit.
+     *
+     * @param <T> The type of the result.
+     */
+    private static final class Call<T> implements Runnable {
+        private final Supplier<T> task;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Call(Supplier<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!result.isDone()) { // Skipped if cancelled or timed out while queued
+                    result.complete(task.get());
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                startNext();
+            }
+        }
+    }
+
+    /**
+     * Creates a virtual-thread executor if the runtime supports it, otherwise a fixed pool of daemon threads.
+     *
+     * @return The executor.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(MAX_CONCURRENCY, r -> {
+                Thread thread = new Thread(r, "cybook-async-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
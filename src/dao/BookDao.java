@@ -1,6 +1,7 @@
 package dao;
 
 import model.Book;
+import util.BoundedCache;
 import util.databaseManager;
 
 import java.sql.Connection;
@@ -8,11 +9,35 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 /**
- * User Data Access Object (DAO) to manage database operations related to books.
+ * User Data Access Object (DAO) to manage MySQL database operations related to books.
+ * <p>
+ * {@link #findBookByISBN(String)} reads through a cache of the stock by ISBN, bounded by
+ * {@code cybook.cache.books.size} entries (10000 by default) and an age of
+ * {@code cybook.cache.books.ttlSeconds} (60 by default). Every write of the stock, here and in
+ * {@link LoanDao}, invalidates the cached entry of the ISBN it changes.
+ * </p>
  */
-public class BookDao {
+public class BookDao implements BookRepository {
+
+    /** Number of rows sent and committed together by {@link #addStock(Map)}. */
+    public static final int UPSERT_BATCH_SIZE = 1000;
+
+    /** Loans of a book in the last 30 days: ISBN. */
+    public static final String LOANS_COUNT_FOR_ISBN_SQL = "SELECT COUNT(*) AS count FROM loans WHERE book_isbn = ? AND date_loaned >= CURDATE() - INTERVAL 30 DAY";
+
+    /** Cached stock of an ISBN that is not in the books table. */
+    private static final int ABSENT = -1;
+
+    private static final BoundedCache<String, Integer> stockCache = new BoundedCache<>("CatalogCache",
+            Integer.getInteger("cybook.cache.books.size", 10_000),
+            Integer.getInteger("cybook.cache.books.ttlSeconds", 60) * 1000L);
 	
 	/**
      * Constructeur par défaut.
@@ -43,53 +68,165 @@ public class BookDao {
         return books;
     }
 
+    /**
+     * Method to retrieve one page of the books in stock, ordered by ISBN.
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @param pageSize the maximum number of books in the page.
+     * @return the page of books.
+     */
+    public Page<Book> getBooksInStockPage(String pageToken, int pageSize) {
+        List<Book> books = new ArrayList<>();
+        String sql = "SELECT isbn, stock FROM books WHERE stock > 0 AND isbn > ? ORDER BY isbn LIMIT ?";
+        String afterIsbn = pageToken == null ? "" : Page.decodeToken(pageToken, 1)[0];
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, afterIsbn);
+            pstmt.setInt(2, pageSize + 1); // One more row tells whether a next page exists
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(new Book(rs.getString("isbn"), rs.getInt("stock")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching page of books: " + e.getMessage());
+        }
+
+        String nextToken = null;
+        if (books.size() > pageSize) {
+            books.remove(pageSize);
+            nextToken = Page.encodeToken(books.get(pageSize - 1).getIsbn());
+        }
+        return new Page<>(books, nextToken);
+    }
+
+    /**
+     * Method to stream all books ordered by ISBN without loading them all in memory.
+     * The stream holds a database connection and must be closed, for example with try-with-resources.
+     * @return a stream of all books.
+     */
+    public Stream<Book> streamBooks() {
+        String sql = "SELECT isbn, stock FROM books ORDER BY isbn";
+        return ResultStreams.stream(sql, null, rs -> new Book(rs.getString("isbn"), rs.getInt("stock")));
+    }
+
     /**
      * Method to update the stock of an existing book or add a new book if it doesn't exist.
      * @param isbn the ISBN of the book to be updated or added.
      */
     public void updateOrAddBook(String isbn) {
-        String sqlCheck = "SELECT stock FROM books WHERE isbn = ?";
-        String sqlUpdate = "UPDATE books SET stock = stock + 1 WHERE isbn = ?";
-        String sqlInsert = "INSERT INTO books (isbn, stock) VALUES (?, 1)";
+        String sqlUpsert = "INSERT INTO books (isbn, stock) VALUES (?, 1) ON DUPLICATE KEY UPDATE stock = stock + 1";
 
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement checkStmt = conn.prepareStatement(sqlCheck);
-             PreparedStatement updateStmt = conn.prepareStatement(sqlUpdate);
-             PreparedStatement insertStmt = conn.prepareStatement(sqlInsert)) {
-            
-            checkStmt.setString(1, isbn);
-            ResultSet rs = checkStmt.executeQuery();
-            
-            if (rs.next()) {
-                // Book exists, update the stock
-                updateStmt.setString(1, isbn);
-                updateStmt.executeUpdate();
-            } else {
-                // Book doesn't exist, insert a new entry
-                insertStmt.setString(1, isbn);
-                insertStmt.executeUpdate();
-            }
+             PreparedStatement upsertStmt = conn.prepareStatement(sqlUpsert)) {
+            upsertStmt.setString(1, isbn);
+            upsertStmt.executeUpdate();
         } catch (SQLException e) {
             System.err.println("Error processing book update or add: " + e.getMessage());
+        } finally {
+            invalidateStock(isbn);
+        }
+    }
+
+    /**
+     * Method to add stock for many books at once.
+     * Missing books are inserted and existing ones have their stock increased, using batched upserts
+     * committed every {@link #UPSERT_BATCH_SIZE} rows.
+     * @param quantities the number of copies to add, by ISBN.
+     * @return the number of ISBNs written, which is smaller than the map size if a batch failed.
+     */
+    public int addStock(Map<String, Integer> quantities) {
+        String sqlUpsert = "INSERT INTO books (isbn, stock) VALUES (?, ?) AS new ON DUPLICATE KEY UPDATE stock = books.stock + new.stock";
+        int written = 0;
+
+        try (Connection conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsertStmt = conn.prepareStatement(sqlUpsert)) {
+                int pending = 0;
+                for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                    upsertStmt.setString(1, entry.getKey());
+                    upsertStmt.setInt(2, entry.getValue());
+                    upsertStmt.addBatch();
+                    if (++pending == UPSERT_BATCH_SIZE) {
+                        upsertStmt.executeBatch();
+                        conn.commit();
+                        written += pending;
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    upsertStmt.executeBatch();
+                    conn.commit();
+                    written += pending;
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error adding stock in batch: " + e.getMessage());
+        } finally {
+            quantities.keySet().forEach(BookDao::invalidateStock);
         }
+        return written;
     }
 
     /**
-     * Method to find a book by its ISBN.
+     * Method to find a book by its ISBN, from the cache when possible.
      * @param isbn the ISBN of the book to be found.
      * @return the Book object if found, null otherwise.
      */
     public Book findBookByISBN(String isbn) {
-        String sql = "SELECT isbn, stock FROM books WHERE isbn = ?";
+        Integer stock = stockCache.get(isbn, BookDao::fetchStock);
+        if (stock == null || stock == ABSENT) {
+            return null;
+        }
+        return new Book(isbn, stock);
+    }
+
+    /**
+     * Method to find the stock of many books with one query per {@link #UPSERT_BATCH_SIZE} ISBNs.
+     * @param isbns the ISBNs of the books.
+     * @return the stock by ISBN, without the books that do not exist.
+     */
+    public Map<String, Integer> getStocks(Collection<String> isbns) {
+        if (isbns.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> stocks = new HashMap<>();
+        List<String> pending = new ArrayList<>(isbns);
+        try (Connection conn = databaseManager.getConnection()) {
+            for (int from = 0; from < pending.size(); from += UPSERT_BATCH_SIZE) {
+                List<String> batch = pending.subList(from, Math.min(pending.size(), from + UPSERT_BATCH_SIZE));
+                String sql = "SELECT isbn, stock FROM books WHERE isbn IN (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        pstmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            stocks.put(rs.getString("isbn"), rs.getInt("stock"));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching stock of books: " + e.getMessage());
+        }
+        return stocks;
+    }
+
+    /**
+     * Method to read the stock of a book from the database.
+     * @param isbn the ISBN of the book.
+     * @return the stock, {@link #ABSENT} if the book does not exist, or null if the query failed.
+     */
+    private static Integer fetchStock(String isbn) {
+        String sql = "SELECT stock FROM books WHERE isbn = ?";
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, isbn);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return new Book(
-                        rs.getString("isbn"),
-                        rs.getInt("stock")
-                    );
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("stock") : ABSENT;
             }
         } catch (SQLException e) {
             System.err.println("Error fetching book by ISBN: " + e.getMessage());
@@ -97,15 +234,30 @@ public class BookDao {
         return null;
     }
 
+    /**
+     * Method to drop the cached stock of a book after it was changed in the database.
+     * @param isbn the ISBN of the book.
+     */
+    static void invalidateStock(String isbn) {
+        stockCache.invalidate(isbn);
+    }
+
+    /**
+     * Method to get the cache of the stock by ISBN, to read its hit ratio and eviction counters.
+     * @return the stock cache.
+     */
+    public static BoundedCache<String, Integer> getStockCache() {
+        return stockCache;
+    }
+
     /**
      * Method to get the count of loans for a book by its ISBN in the last 30 days.
      * @param isbn the ISBN of the book.
      * @return the count of loans in the last 30 days.
      */
     public int getLoansCountForISBN(String isbn) {
-        String sql = "SELECT COUNT(*) AS count FROM loans WHERE book_isbn = ? AND date_loaned >= CURDATE() - INTERVAL 30 DAY";
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(LOANS_COUNT_FOR_ISBN_SQL)) {
             pstmt.setString(1, isbn);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -0,0 +1,161 @@
+package dao;
+
+import model.BookMetadata;
+import util.databaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object (DAO) to manage MySQL database operations related to the bibliographic metadata of the books.
+ */
+public class BookMetadataDao implements BookMetadataRepository {
+
+    /** Maximum number of ISBNs bound to one {@code IN} list. */
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    /**
+     * Constructeur par défaut.
+     */
+    public BookMetadataDao() {
+        // Default constructor
+    }
+
+    /**
+     * Method to find the metadata of a book.
+     * @param isbn the ISBN of the book.
+     * @return the metadata, or null if it is not stored.
+     */
+    public BookMetadata findMetadata(String isbn) {
+        String sql = "SELECT isbn, title, author, edition, publication_date, collection, fetched_at FROM book_metadata WHERE isbn = ?";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, isbn);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapMetadata(rs);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching book metadata: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Method to find the metadata of many books with one query per {@link #LOOKUP_BATCH_SIZE} ISBNs.
+     * @param isbns the ISBNs of the books.
+     * @return the metadata by ISBN, without the books whose metadata is not stored.
+     */
+    public Map<String, BookMetadata> findMetadata(Collection<String> isbns) {
+        if (isbns.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, BookMetadata> metadata = new HashMap<>();
+        List<String> pending = new ArrayList<>(isbns);
+        try (Connection conn = databaseManager.getConnection()) {
+            for (int from = 0; from < pending.size(); from += LOOKUP_BATCH_SIZE) {
+                List<String> batch = pending.subList(from, Math.min(pending.size(), from + LOOKUP_BATCH_SIZE));
+                String sql = "SELECT isbn, title, author, edition, publication_date, collection, fetched_at FROM book_metadata WHERE isbn IN ("
+                        + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        pstmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            BookMetadata row = mapMetadata(rs);
+                            metadata.put(row.getIsbn(), row);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching book metadata in batch: " + e.getMessage());
+        }
+        return metadata;
+    }
+
+    /**
+     * Method to insert or replace the metadata of a book.
+     * @param metadata the metadata.
+     * @return true if the metadata was saved, false otherwise.
+     */
+    public boolean saveMetadata(BookMetadata metadata) {
+        String sql = "INSERT INTO book_metadata (isbn, title, author, edition, publication_date, collection, fetched_at) "
+                   + "VALUES (?, ?, ?, ?, ?, ?, ?) AS new "
+                   + "ON DUPLICATE KEY UPDATE title = new.title, author = new.author, edition = new.edition, "
+                   + "publication_date = new.publication_date, collection = new.collection, fetched_at = new.fetched_at";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, metadata.getIsbn());
+            pstmt.setString(2, nonNull(metadata.getTitle()));
+            pstmt.setString(3, nonNull(metadata.getAuthor()));
+            pstmt.setString(4, nonNull(metadata.getEdition()));
+            pstmt.setString(5, nonNull(metadata.getPublicationDate()));
+            pstmt.setString(6, nonNull(metadata.getCollection()));
+            pstmt.setTimestamp(7, new Timestamp(metadata.getFetchedAt()));
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("Error saving book metadata: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Method to list the books whose metadata is missing or was fetched before a given time.
+     * @param fetchedBefore the time in milliseconds since the epoch before which metadata is stale.
+     * @param limit the maximum number of ISBNs.
+     * @return the ISBNs, books without metadata first.
+     */
+    public List<String> findStaleIsbns(long fetchedBefore, int limit) {
+        List<String> isbns = new ArrayList<>();
+        String sql = "SELECT b.isbn FROM books b LEFT JOIN book_metadata m ON m.isbn = b.isbn "
+                   + "WHERE m.isbn IS NULL OR m.fetched_at < ? "
+                   + "ORDER BY m.fetched_at IS NOT NULL, m.fetched_at LIMIT ?";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, new Timestamp(fetchedBefore));
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    isbns.add(rs.getString("isbn"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching stale book metadata: " + e.getMessage());
+        }
+        return isbns;
+    }
+
+    /**
+     * Map the current row of a result set to book metadata.
+     * @param rs the result set positioned on a row.
+     * @return the metadata.
+     * @throws SQLException if a column cannot be read.
+     */
+    private BookMetadata mapMetadata(ResultSet rs) throws SQLException {
+        return new BookMetadata(
+            rs.getString("isbn"),
+            rs.getString("title"),
+            rs.getString("author"),
+            rs.getString("edition"),
+            rs.getString("publication_date"),
+            rs.getString("collection"),
+            rs.getTimestamp("fetched_at").getTime()
+        );
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
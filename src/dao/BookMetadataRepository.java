@@ -0,0 +1,43 @@
+package dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import model.BookMetadata;
+
+/**
+ * Storage operations on the local copy of the bibliographic metadata of the books.
+ * Implemented by {@link BookMetadataDao} for MySQL and by {@link InMemoryLibrary} for the in-process engine.
+ */
+public interface BookMetadataRepository {
+
+    /**
+     * Finds the metadata of a book.
+     * @param isbn the ISBN of the book.
+     * @return the metadata, or null if it is not stored.
+     */
+    BookMetadata findMetadata(String isbn);
+
+    /**
+     * Finds the metadata of many books at once.
+     * @param isbns the ISBNs of the books.
+     * @return the metadata by ISBN, without the books whose metadata is not stored.
+     */
+    Map<String, BookMetadata> findMetadata(Collection<String> isbns);
+
+    /**
+     * Inserts or replaces the metadata of a book.
+     * @param metadata the metadata.
+     * @return true if the metadata was saved, false otherwise.
+     */
+    boolean saveMetadata(BookMetadata metadata);
+
+    /**
+     * Lists the books of the local catalogue whose metadata is missing or was fetched before a given time.
+     * @param fetchedBefore the time in milliseconds since the epoch before which metadata is stale.
+     * @param limit the maximum number of ISBNs.
+     * @return the ISBNs, books without metadata first.
+     */
+    List<String> findStaleIsbns(long fetchedBefore, int limit);
+}
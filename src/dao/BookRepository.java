@@ -0,0 +1,69 @@
+package dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import model.Book;
+
+/**
+ * Storage operations on the books and their stock.
+ * Implemented by {@link BookDao} for MySQL and by {@link InMemoryLibrary} for the in-process engine.
+ */
+public interface BookRepository {
+
+    /**
+     * Retrieves all books.
+     * @return a list of all books.
+     */
+    List<Book> getAllBooks();
+
+    /**
+     * Retrieves one page of the books in stock, ordered by ISBN.
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @param pageSize the maximum number of books in the page.
+     * @return the page of books.
+     */
+    Page<Book> getBooksInStockPage(String pageToken, int pageSize);
+
+    /**
+     * Streams all books ordered by ISBN. The stream must be closed.
+     * @return a stream of all books.
+     */
+    Stream<Book> streamBooks();
+
+    /**
+     * Adds one copy of a book, creating the book if it doesn't exist.
+     * @param isbn the ISBN of the book.
+     */
+    void updateOrAddBook(String isbn);
+
+    /**
+     * Adds stock for many books at once, creating the missing books.
+     * @param quantities the number of copies to add, by ISBN.
+     * @return the number of ISBNs written.
+     */
+    int addStock(Map<String, Integer> quantities);
+
+    /**
+     * Finds a book by its ISBN.
+     * @param isbn the ISBN of the book.
+     * @return the book, or null if it is unknown.
+     */
+    Book findBookByISBN(String isbn);
+
+    /**
+     * Finds the stock of many books at once.
+     * @param isbns the ISBNs of the books.
+     * @return the stock by ISBN, without the books that are unknown.
+     */
+    Map<String, Integer> getStocks(Collection<String> isbns);
+
+    /**
+     * Counts the loans of a book in the last 30 days.
+     * @param isbn the ISBN of the book.
+     * @return the count of loans.
+     */
+    int getLoansCountForISBN(String isbn);
+}
@@ -0,0 +1,15 @@
+package dao;
+
+/**
+ * Outcome of a checkout performed by {@link LoanRepository#checkout(int, String, java.util.Date, java.util.Date)}.
+ */
+public enum CheckoutResult {
+    /** The stock was reserved and the loan recorded. */
+    OK,
+    /** The book is unknown or none of its copies are in stock. */
+    NO_STOCK,
+    /** The user already has the maximum number of active loans. */
+    LIMIT_REACHED,
+    /** The database could not be reached or the transaction failed; nothing was changed. */
+    ERROR
+}
@@ -0,0 +1,1034 @@
+package dao;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import model.Book;
+import model.BookMetadata;
+import model.LateLoan;
+import model.Loan;
+import model.User;
+import util.IntList;
+import util.IsbnValidator;
+import util.LongIntHashMap;
+import util.UserValidator;
+
+/**
+ * In-process storage engine implementing the three repositories without a database server,
+ * for small branch libraries and for tests.
+ * <p>
+ * Books are kept in a primitive map from the ISBN, normalized to its ISBN-13 as a {@code long},
+ * to the stock. Users are stored in an array indexed by their {@code int} ID, and loans in
+ * parallel primitive arrays indexed by loan ID. Secondary indexes map each user to their open
+ * loans and each due date to the open loans due that day, so checkout, return and overdue
+ * queries only touch the rows they need, the overdue count is kept in {@link LoanCounters} and the most borrowed books in
+ * {@link PopularityIndex}.
+ * </p>
+ * <p>
+ * Every change is first appended to a write-ahead journal, one line per operation, and then
+ * applied in memory. Opening the library replays the journal. The journal is flushed after each
+ * operation and, if {@code sync} is set, forced to disk. An incomplete last line, left by a crash
+ * during a write, is cut off when the journal is opened; that operation was never applied. Any other
+ * unreadable line makes the opening fail, so the library never runs on a journal it cannot extend.
+ * </p>
+ * <p>
+ * Once the journal holds twice as many lines as after its last compaction, and at least
+ * {@code cybook.storage.compactLines} (10,000 by default), it is compacted: the current state is
+ * written as a new journal, one line per book, user and loan, which then replaces the old one.
+ * </p>
+ */
+public class InMemoryLibrary implements BookRepository, LoanRepository, UserRepository, BookMetadataRepository {
+
+    private static final byte OPEN = 0;
+    private static final byte RETURNED = 1;
+    private static final byte DELETED = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int COMPACT_MIN_LINES = Integer.getInteger("cybook.storage.compactLines", 10_000);
+    private static final Comparator<User> BY_NAME = Comparator
+            .comparing(User::getLastName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(User::getFirstName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingInt(User::getId);
+
+    // Books
+    private final LongIntHashMap stockByIsbn = new LongIntHashMap(INITIAL_CAPACITY);
+    private long[] sortedIsbns; // Sorted copy of the keys, null when a book was added since
+    private final Map<Long, BookMetadata> metadataByIsbn = new HashMap<>();
+
+    // Users, indexed by ID
+    private User[] users = new User[INITIAL_CAPACITY];
+    private int lastUserId;
+    private User[] usersByName; // Users sorted by name, null when a user changed since
+
+    // Loans, one slot per loan ID in each array
+    private int lastLoanId;
+    private int[] loanUser = new int[INITIAL_CAPACITY];
+    private long[] loanIsbn = new long[INITIAL_CAPACITY];
+    private int[] loanDay = new int[INITIAL_CAPACITY];
+    private int[] dueDay = new int[INITIAL_CAPACITY];
+    private byte[] loanState = new byte[INITIAL_CAPACITY];
+
+    // Secondary indexes
+    private IntList[] openLoansByUser = new IntList[INITIAL_CAPACITY];
+    private IntList[] loansByUser = new IntList[INITIAL_CAPACITY];
+    private final NavigableMap<Integer, IntList> openLoansByDueDay = new TreeMap<>();
+    private final NavigableMap<Integer, IntList> loansByLoanDay = new TreeMap<>();
+    private final LoanCounters counters = new LoanCounters();
+    private final PopularityIndex popularity = new PopularityIndex();
+
+    // Write-ahead journal, replaced when compacted
+    private final Path journalPath;
+    private Writer journal;
+    private FileOutputStream journalFile;
+    private final boolean sync;
+    private int journalLines; // Lines in the journal file
+    private int compactAt; // Number of lines from which the journal is compacted
+
+    /**
+     * Creates an empty library without persistence.
+     */
+    public InMemoryLibrary() {
+        this.journalPath = null;
+        this.sync = false;
+    }
+
+    /**
+     * Opens a library persisted in a journal file, replaying it if it exists.
+     * An incomplete last line, left by a crash, is removed from the file.
+     *
+     * @param journalPath The journal file.
+     * @param sync        True to force the journal to disk after each operation.
+     * @throws IOException if the journal cannot be read, has an unreadable line other than an incomplete last one, or cannot be opened for writing.
+     */
+    public InMemoryLibrary(Path journalPath, boolean sync) throws IOException {
+        this.journalPath = journalPath;
+        this.sync = sync;
+        if (Files.exists(journalPath)) {
+            long removed = truncateTornLine(journalPath);
+            if (removed > 0) {
+                System.err.println("Storage journal " + journalPath + ": removed an incomplete last line of " + removed + " bytes, left by an interrupted write");
+            }
+            journalLines = replay(journalPath);
+        }
+        openJournal();
+        compactAt = Math.max(COMPACT_MIN_LINES, 2 * liveRecords());
+        if (journalLines >= compactAt) {
+            compact();
+        }
+    }
+
+    // ----- Books -----
+
+    @Override
+    public synchronized List<Book> getAllBooks() {
+        List<Book> books = new ArrayList<>(stockByIsbn.size());
+        stockByIsbn.forEach((isbn, stock) -> books.add(new Book(String.valueOf(isbn), stock)));
+        return books;
+    }
+
+    @Override
+    public synchronized Page<Book> getBooksInStockPage(String pageToken, int pageSize) {
+        long[] isbns = sortedIsbns();
+        int start = 0;
+        if (pageToken != null) {
+            long after = Long.parseLong(Page.decodeToken(pageToken, 1)[0]);
+            int found = Arrays.binarySearch(isbns, after);
+            start = found >= 0 ? found + 1 : -found - 1;
+        }
+        List<Book> books = new ArrayList<>();
+        String nextToken = null;
+        for (int i = start; i < isbns.length; i++) {
+            int stock = stockByIsbn.get(isbns[i], 0);
+            if (stock <= 0) {
+                continue;
+            }
+            if (books.size() == pageSize) {
+                nextToken = Page.encodeToken(books.get(pageSize - 1).getIsbn());
+                break;
+            }
+            books.add(new Book(String.valueOf(isbns[i]), stock));
+        }
+        return new Page<>(books, nextToken);
+    }
+
+    @Override
+    public Stream<Book> streamBooks() {
+        long[] isbns;
+        synchronized (this) {
+            isbns = sortedIsbns();
+        }
+        return Arrays.stream(isbns).mapToObj(isbn -> {
+            synchronized (this) {
+                return new Book(String.valueOf(isbn), stockByIsbn.get(isbn, 0));
+            }
+        });
+    }
+
+    @Override
+    public synchronized void updateOrAddBook(String isbn) {
+        long key = isbnKey(isbn);
+        if (key < 0) {
+            System.err.println("Error processing book update or add: invalid ISBN " + isbn);
+            return;
+        }
+        if (log("S", key, 1)) {
+            applyStock(key, 1);
+        }
+    }
+
+    @Override
+    public synchronized int addStock(Map<String, Integer> quantities) {
+        int written = 0;
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            long key = isbnKey(entry.getKey());
+            if (key < 0) {
+                System.err.println("Error adding stock: invalid ISBN " + entry.getKey());
+            } else if (log("S", key, entry.getValue())) {
+                applyStock(key, entry.getValue());
+                written++;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized Book findBookByISBN(String isbn) {
+        long key = isbnKey(isbn);
+        if (key < 0 || !stockByIsbn.containsKey(key)) {
+            return null;
+        }
+        return new Book(String.valueOf(key), stockByIsbn.get(key, 0));
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getStocks(Collection<String> isbns) {
+        Map<String, Integer> stocks = new HashMap<>();
+        for (String isbn : isbns) {
+            long key = isbnKey(isbn);
+            if (key >= 0 && stockByIsbn.containsKey(key)) {
+                stocks.put(isbn, stockByIsbn.get(key, 0));
+            }
+        }
+        return stocks;
+    }
+
+    @Override
+    public synchronized int getLoansCountForISBN(String isbn) {
+        long key = isbnKey(isbn);
+        int count = 0;
+        for (IntList loans : loansByLoanDay.tailMap(today() - 30, true).values()) {
+            for (int i = 0; i < loans.size(); i++) {
+                int id = loans.get(i);
+                if (loanIsbn[id] == key && loanState[id] != DELETED) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // ----- Book metadata -----
+
+    @Override
+    public synchronized BookMetadata findMetadata(String isbn) {
+        return metadataByIsbn.get(isbnKey(isbn));
+    }
+
+    @Override
+    public synchronized Map<String, BookMetadata> findMetadata(Collection<String> isbns) {
+        Map<String, BookMetadata> metadata = new HashMap<>();
+        for (String isbn : isbns) {
+            BookMetadata found = metadataByIsbn.get(isbnKey(isbn));
+            if (found != null) {
+                metadata.put(isbn, found);
+            }
+        }
+        return metadata;
+    }
+
+    @Override
+    public synchronized boolean saveMetadata(BookMetadata metadata) {
+        long key = isbnKey(metadata.getIsbn());
+        if (key < 0) {
+            System.err.println("Error saving book metadata: invalid ISBN " + metadata.getIsbn());
+            return false;
+        }
+        BookMetadata stored = new BookMetadata(String.valueOf(key), nonNull(metadata.getTitle()), nonNull(metadata.getAuthor()),
+                nonNull(metadata.getEdition()), nonNull(metadata.getPublicationDate()), nonNull(metadata.getCollection()),
+                metadata.getFetchedAt());
+        if (!log("M", key, stored.getTitle(), stored.getAuthor(), stored.getEdition(),
+                stored.getPublicationDate(), stored.getCollection(), stored.getFetchedAt())) {
+            return false;
+        }
+        metadataByIsbn.put(key, stored);
+        return true;
+    }
+
+    @Override
+    public synchronized List<String> findStaleIsbns(long fetchedBefore, int limit) {
+        List<Long> missing = new ArrayList<>();
+        List<BookMetadata> stale = new ArrayList<>();
+        for (long isbn : sortedIsbns()) {
+            BookMetadata metadata = metadataByIsbn.get(isbn);
+            if (metadata == null) {
+                missing.add(isbn);
+            } else if (metadata.getFetchedAt() < fetchedBefore) {
+                stale.add(metadata);
+            }
+        }
+        stale.sort(Comparator.comparingLong(BookMetadata::getFetchedAt));
+        List<String> isbns = new ArrayList<>();
+        missing.forEach(isbn -> isbns.add(String.valueOf(isbn)));
+        stale.forEach(metadata -> isbns.add(metadata.getIsbn()));
+        return new ArrayList<>(isbns.subList(0, Math.min(limit, isbns.size())));
+    }
+
+    // ----- Users -----
+
+    @Override
+    public synchronized boolean addUser(User user) {
+        if (!UserValidator.isValidName(user.getFirstName()) || !UserValidator.isValidName(user.getLastName()) || !UserValidator.isValidEmail(user.getEmail()) || !UserValidator.isValidAddress(user.getAddress()) || !UserValidator.isValidPhone(user.getPhone())) {
+            System.out.println("Error: Invalid user data.");
+            return false;
+        }
+        int id = lastUserId + 1;
+        if (!logUser(id, user)) {
+            return false;
+        }
+        applyUser(id, user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone());
+        user.setId(id);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean updateUser(User user) {
+        if (!UserValidator.isValidName(user.getFirstName()) || !UserValidator.isValidName(user.getLastName()) || !UserValidator.isValidEmail(user.getEmail())) {
+            System.out.println("Error: Invalid user data.");
+            return false;
+        }
+        if (user.getId() <= 0 || user.getId() > lastUserId || users[user.getId()] == null) {
+            return false;
+        }
+        if (!logUser(user.getId(), user)) {
+            return false;
+        }
+        applyUser(user.getId(), user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean deleteUser(int userId) {
+        if (userId <= 0 || userId > lastUserId || users[userId] == null) {
+            return false;
+        }
+        if (!log("DU", userId)) {
+            return false;
+        }
+        applyDeleteUser(userId);
+        return true;
+    }
+
+    @Override
+    public synchronized List<User> getAllUsers() {
+        List<User> result = new ArrayList<>();
+        for (int id = 1; id <= lastUserId; id++) {
+            if (users[id] != null) {
+                result.add(copy(users[id]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Page<User> getUsersPage(String pageToken, int pageSize) {
+        User[] sorted = usersByName();
+        int start = 0;
+        if (pageToken != null) {
+            String[] after = Page.decodeToken(pageToken, 3);
+            User probe = new User(Integer.parseInt(after[2]), after[0], after[1], null, null, null);
+            int found = Arrays.binarySearch(sorted, probe, BY_NAME);
+            start = found >= 0 ? found + 1 : -found - 1;
+        }
+        int end = Math.min(sorted.length, start + pageSize);
+        List<User> page = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            page.add(copy(sorted[i]));
+        }
+        String nextToken = null;
+        if (end < sorted.length && !page.isEmpty()) {
+            User last = page.get(page.size() - 1);
+            nextToken = Page.encodeToken(last.getLastName(), last.getFirstName(), last.getId());
+        }
+        return new Page<>(page, nextToken);
+    }
+
+    @Override
+    public Stream<User> streamUsers() {
+        int last;
+        synchronized (this) {
+            last = lastUserId;
+        }
+        return IntStream.rangeClosed(1, last).mapToObj(id -> {
+            synchronized (this) {
+                return users[id] == null ? null : copy(users[id]);
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    // ----- Loans -----
+
+    @Override
+    public synchronized List<Loan> getAllLoans() {
+        List<Loan> loans = new ArrayList<>();
+        for (int id = 1; id <= lastLoanId; id++) {
+            addLoanTo(loans, id);
+        }
+        return loans;
+    }
+
+    @Override
+    public Stream<Loan> streamLoans() {
+        int last;
+        synchronized (this) {
+            last = lastLoanId;
+        }
+        return IntStream.rangeClosed(1, last).mapToObj(this::loanOrNull).filter(Objects::nonNull);
+    }
+
+    @Override
+    public void addLoan(Loan loan) {
+        CheckoutResult result = checkout(loan.getUser().getId(), loan.getBook().getIsbn(), loan.getLoanDate(), loan.getDueDate());
+        if (result != CheckoutResult.OK) {
+            System.err.println("Loan not added for book with ISBN " + loan.getBook().getIsbn() + ": " + result);
+        }
+    }
+
+    @Override
+    public synchronized CheckoutResult checkout(int userId, String isbn, Date loanDate, Date dueDate) {
+        long key = isbnKey(isbn);
+        if (countActiveLoansByUser(userId) >= MAX_ACTIVE_LOANS) {
+            return CheckoutResult.LIMIT_REACHED;
+        }
+        if (key < 0 || stockByIsbn.get(key, 0) <= 0) {
+            return CheckoutResult.NO_STOCK;
+        }
+        int id = lastLoanId + 1;
+        if (!log("L", id, userId, key, day(loanDate), day(dueDate))) {
+            return CheckoutResult.ERROR;
+        }
+        applyLoan(id, userId, key, day(loanDate), day(dueDate));
+        return CheckoutResult.OK;
+    }
+
+    @Override
+    public synchronized void deleteLoan(int loanId) {
+        if (loanId <= 0 || loanId > lastLoanId || loanState[loanId] == DELETED) {
+            return;
+        }
+        if (log("DL", loanId)) {
+            applyDeleteLoan(loanId);
+        }
+    }
+
+    @Override
+    public synchronized List<Book> getBorrowedBooksByUser(int userId) {
+        List<Book> books = new ArrayList<>();
+        IntList open = indexOf(openLoansByUser, userId);
+        for (int i = 0; open != null && i < open.size(); i++) {
+            long isbn = loanIsbn[open.get(i)];
+            books.add(new Book(String.valueOf(isbn), stockByIsbn.get(isbn, 0)));
+        }
+        return books;
+    }
+
+    @Override
+    public synchronized List<User> getUsersWithCurrentLoans() {
+        List<User> result = new ArrayList<>();
+        for (int id = 1; id <= lastUserId; id++) {
+            IntList open = indexOf(openLoansByUser, id);
+            if (users[id] != null && open != null && !open.isEmpty()) {
+                result.add(copy(users[id]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Loan> getLateLoans() {
+        List<Loan> loans = new ArrayList<>();
+        for (IntList due : openLoansByDueDay.headMap(today(), false).values()) {
+            for (int i = 0; i < due.size(); i++) {
+                addLoanTo(loans, due.get(i));
+            }
+        }
+        return loans;
+    }
+
+    @Override
+    public synchronized List<LateLoan> getLateLoanReport() {
+        List<LateLoan> report = new ArrayList<>();
+        int today = today();
+        for (IntList due : openLoansByDueDay.headMap(today, false).values()) {
+            for (int i = 0; i < due.size(); i++) {
+                int id = due.get(i);
+                int userId = loanUser[id];
+                if (loanState[id] != DELETED && userId > 0 && userId <= lastUserId && users[userId] != null) {
+                    User user = users[userId];
+                    report.add(new LateLoan(id, userId, user.getFirstName() + " " + user.getLastName(),
+                            String.valueOf(loanIsbn[id]), toDate(dueDay[id]), today - dueDay[id]));
+                }
+            }
+        }
+        return report;
+    }
+
+    @Override
+    public synchronized int countActiveLoansByUser(int userId) {
+        IntList open = indexOf(openLoansByUser, userId);
+        return open == null ? 0 : open.size();
+    }
+
+    @Override
+    public synchronized int countOverdueLoans() {
+        return counters.overdueLoans();
+    }
+
+    /**
+     * Recomputes the counters of the open loans and the popularity index from the loans held in memory.
+     */
+    public synchronized void rebuildCounters() {
+        counters.clear();
+        popularity.clear();
+        for (int id = 1; id <= lastLoanId; id++) {
+            if (loanState[id] == OPEN) {
+                counters.addOpenLoans(loanUser[id], dueDay[id], 1);
+            }
+            if (loanState[id] != DELETED) {
+                popularity.add(String.valueOf(loanIsbn[id]), loanDay[id], 1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean returnLoan(int userId, String isbn) {
+        long key = isbnKey(isbn);
+        IntList open = indexOf(openLoansByUser, userId);
+        int latest = -1;
+        for (int i = 0; open != null && i < open.size(); i++) {
+            int id = open.get(i);
+            if (loanIsbn[id] == key && (latest < 0 || dueDay[id] > dueDay[latest])) {
+                latest = id;
+            }
+        }
+        if (latest < 0) {
+            System.err.println("Aucun prêt trouvé à retourner pour l'utilisateur avec ID: " + userId + " et le livre avec l'ISBN: " + isbn);
+            return false;
+        }
+        if (!log("R", latest)) {
+            return false;
+        }
+        applyReturn(latest);
+        return true;
+    }
+
+    @Override
+    public List<Book> fetchTopBooks() {
+        return fetchTopBooks(3, 30);
+    }
+
+    @Override
+    public synchronized List<Book> fetchTopBooks(int k, int windowDays) {
+        List<Book> topBooks = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : popularity.top(k, windowDays)) {
+            Book book = new Book(entry.getKey(), stockByIsbn.get(Long.parseLong(entry.getKey()), 0));
+            book.setLoansCount(entry.getValue());
+            topBooks.add(book);
+        }
+        return topBooks;
+    }
+
+    @Override
+    public synchronized List<Loan> getLoansByUser(int userId) {
+        List<Loan> loans = new ArrayList<>();
+        IntList all = indexOf(loansByUser, userId);
+        for (int i = 0; all != null && i < all.size(); i++) {
+            addLoanTo(loans, all.get(i));
+        }
+        return loans;
+    }
+
+    // ----- State changes, shared by the live operations and the journal replay -----
+
+    private void applyStock(long isbn, int delta) {
+        if (!stockByIsbn.containsKey(isbn)) {
+            sortedIsbns = null;
+        }
+        stockByIsbn.addTo(isbn, delta);
+    }
+
+    private void applyUser(int id, String lastName, String firstName, String email, String address, String phone) {
+        if (id >= users.length) {
+            users = Arrays.copyOf(users, Math.max(id + 1, users.length * 2));
+        }
+        users[id] = new User(id, lastName, firstName, email, address, phone);
+        lastUserId = Math.max(lastUserId, id);
+        usersByName = null;
+    }
+
+    private void applyDeleteUser(int id) {
+        users[id] = null;
+        usersByName = null;
+    }
+
+    private void applyLoan(int id, int userId, long isbn, int loaned, int due) {
+        if (id >= loanState.length) {
+            int capacity = Math.max(id + 1, loanState.length * 2);
+            loanUser = Arrays.copyOf(loanUser, capacity);
+            loanIsbn = Arrays.copyOf(loanIsbn, capacity);
+            loanDay = Arrays.copyOf(loanDay, capacity);
+            dueDay = Arrays.copyOf(dueDay, capacity);
+            loanState = Arrays.copyOf(loanState, capacity);
+        }
+        loanUser[id] = userId;
+        loanIsbn[id] = isbn;
+        loanDay[id] = loaned;
+        dueDay[id] = due;
+        loanState[id] = OPEN;
+        lastLoanId = Math.max(lastLoanId, id);
+
+        stockByIsbn.addTo(isbn, -1);
+        openLoansByUser = addToIndex(openLoansByUser, userId, id);
+        loansByUser = addToIndex(loansByUser, userId, id);
+        openLoansByDueDay.computeIfAbsent(due, d -> new IntList(4)).add(id);
+        counters.addOpenLoans(userId, due, 1);
+        popularity.add(String.valueOf(isbn), loaned, 1);
+        loansByLoanDay.computeIfAbsent(loaned, d -> new IntList(16)).add(id);
+    }
+
+    private void applyReturn(int id) {
+        if (loanState[id] != OPEN) {
+            return;
+        }
+        loanState[id] = RETURNED;
+        stockByIsbn.addTo(loanIsbn[id], 1);
+        removeOpenLoan(id);
+    }
+
+    private void applyDeleteLoan(int id) {
+        if (loanState[id] == OPEN) {
+            removeOpenLoan(id);
+        }
+        loanState[id] = DELETED;
+        popularity.remove(String.valueOf(loanIsbn[id]), loanDay[id]);
+        IntList all = indexOf(loansByUser, loanUser[id]);
+        if (all != null) {
+            all.removeValue(id);
+        }
+        IntList day = loansByLoanDay.get(loanDay[id]);
+        if (day != null) {
+            day.removeValue(id);
+        }
+    }
+
+    private void removeOpenLoan(int id) {
+        counters.removeOpenLoan(loanUser[id], dueDay[id]);
+        IntList open = indexOf(openLoansByUser, loanUser[id]);
+        if (open != null) {
+            open.removeValue(id);
+        }
+        IntList due = openLoansByDueDay.get(dueDay[id]);
+        if (due != null) {
+            due.removeValue(id);
+            if (due.isEmpty()) {
+                openLoansByDueDay.remove(dueDay[id]);
+            }
+        }
+    }
+
+    // ----- Journal -----
+
+    /**
+     * Appends an operation to the journal before it is applied.
+     *
+     * @param op     The operation code.
+     * @param fields The operation fields.
+     * @return true if the operation was journaled (or there is no journal), false if it must not be applied.
+     */
+    private boolean log(String op, Object... fields) {
+        if (journalPath == null) {
+            return true;
+        }
+        if (journalLines >= compactAt) {
+            compact(); // Every operation logged so far is applied
+        }
+        try {
+            journal.write(journalLine(op, fields));
+            journal.flush();
+            if (sync) {
+                journalFile.getFD().sync();
+            }
+            journalLines++;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing the storage journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String journalLine(String op, Object... fields) {
+        StringBuilder line = new StringBuilder(op);
+        for (Object field : fields) {
+            line.append('\t').append(escape(String.valueOf(field)));
+        }
+        return line.append('\n').toString();
+    }
+
+    private void openJournal() throws IOException {
+        journalFile = new FileOutputStream(journalPath.toFile(), true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalFile, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces the journal by the current state, written to a new file then moved over the journal.
+     * If the new journal cannot be written, the old one is kept and compaction is tried again later.
+     */
+    private void compact() {
+        Path compacted = journalPath.resolveSibling(journalPath.getFileName() + ".compact");
+        int lines;
+        try (FileOutputStream out = new FileOutputStream(compacted.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            lines = writeState(writer);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("Error compacting the storage journal, the journal is kept: " + e.getMessage());
+            compactAt = journalLines + COMPACT_MIN_LINES;
+            return;
+        }
+        try {
+            journal.close(); // A file cannot be replaced while open on Windows
+            Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Storage journal compacted from " + journalLines + " to " + lines + " lines.");
+            journalLines = lines;
+            compactAt = Math.max(COMPACT_MIN_LINES, 2 * lines);
+        } catch (IOException e) {
+            System.err.println("Error replacing the storage journal by its compaction: " + e.getMessage());
+            compactAt = journalLines + COMPACT_MIN_LINES;
+        }
+        try {
+            openJournal();
+        } catch (IOException e) {
+            // The closed writer makes the next operations fail rather than run without being saved
+            System.err.println("Error reopening the storage journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the current state as journal lines, which replayed give the same books, users and loans.
+     * The last user and loan are kept even if deleted, so their IDs are not given again; the other
+     * deleted loans are left out, and the replay marks the IDs without a loan line as deleted.
+     *
+     * @param writer The new journal.
+     * @return The number of lines written.
+     * @throws IOException if the journal cannot be written.
+     */
+    private int writeState(Writer writer) throws IOException {
+        int[] lines = new int[1];
+        // Replaying a loan takes a copy from the stock, so the stock written includes the open loans
+        LongIntHashMap openLoansByIsbn = new LongIntHashMap(INITIAL_CAPACITY);
+        for (int id = 1; id <= lastLoanId; id++) {
+            if (loanState[id] == OPEN) {
+                openLoansByIsbn.addTo(loanIsbn[id], 1);
+            }
+        }
+        IOException[] error = new IOException[1];
+        stockByIsbn.forEach((isbn, stock) -> {
+            try {
+                writer.write(journalLine("S", isbn, stock + openLoansByIsbn.get(isbn, 0)));
+                lines[0]++;
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        for (BookMetadata metadata : metadataByIsbn.values()) {
+            writer.write(journalLine("M", metadata.getIsbn(), metadata.getTitle(), metadata.getAuthor(), metadata.getEdition(),
+                    metadata.getPublicationDate(), metadata.getCollection(), metadata.getFetchedAt()));
+            lines[0]++;
+        }
+        for (int id = 1; id <= lastUserId; id++) {
+            User user = users[id];
+            if (user != null) {
+                writer.write(journalLine("U", id, user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone()));
+                lines[0]++;
+            } else if (id == lastUserId) {
+                writer.write(journalLine("U", id, "", "", "", "", ""));
+                writer.write(journalLine("DU", id));
+                lines[0] += 2;
+            }
+        }
+        for (int id = 1; id <= lastLoanId; id++) {
+            if (loanState[id] == DELETED && id != lastLoanId) {
+                continue;
+            }
+            writer.write(journalLine("L", id, loanUser[id], loanIsbn[id], loanDay[id], dueDay[id]));
+            lines[0]++;
+            if (loanState[id] != OPEN) {
+                writer.write(journalLine("R", id)); // Gives the copy back
+                lines[0]++;
+            }
+            if (loanState[id] == DELETED) {
+                writer.write(journalLine("DL", id));
+                lines[0]++;
+            }
+        }
+        return lines[0];
+    }
+
+    /**
+     * Counts at most the lines of the journal once compacted.
+     *
+     * @return The number of books, users, loans (twice for the returned ones) and metadata.
+     */
+    private int liveRecords() {
+        return stockByIsbn.size() + lastUserId + 2 * lastLoanId + metadataByIsbn.size();
+    }
+
+    /**
+     * Removes an incomplete last line, left by a crash in the middle of a write: every complete line ends with a line feed.
+     *
+     * @param journalPath The journal file.
+     * @return The number of bytes removed.
+     * @throws IOException if the journal cannot be read or truncated.
+     */
+    private static long truncateTornLine(Path journalPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long end = size; // End of the last complete line
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            scan:
+            while (end > 0) {
+                long from = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - from));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, from + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = (int) (end - from) - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        end = from + i + 1;
+                        break scan;
+                    }
+                }
+                end = from;
+            }
+            if (end < size) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return size - end;
+        }
+    }
+
+    private boolean logUser(int id, User user) {
+        return log("U", id, user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone());
+    }
+
+    /**
+     * Replays a journal into the empty library.
+     *
+     * @param journalPath The journal file.
+     * @return The number of lines of the journal.
+     * @throws IOException if the journal cannot be read or is corrupted.
+     */
+    private int replay(Path journalPath) throws IOException {
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] f = line.split("\t", -1);
+                for (int i = 1; i < f.length; i++) {
+                    f[i] = unescape(f[i]);
+                }
+                try {
+                    switch (f[0]) {
+                        case "S":
+                            applyStock(Long.parseLong(f[1]), Integer.parseInt(f[2]));
+                            break;
+                        case "U":
+                            applyUser(Integer.parseInt(f[1]), f[2], f[3], f[4], f[5], f[6]);
+                            break;
+                        case "DU":
+                            applyDeleteUser(Integer.parseInt(f[1]));
+                            break;
+                        case "L":
+                            applyLoan(Integer.parseInt(f[1]), Integer.parseInt(f[2]), Long.parseLong(f[3]),
+                                    Integer.parseInt(f[4]), Integer.parseInt(f[5]));
+                            break;
+                        case "R":
+                            applyReturn(Integer.parseInt(f[1]));
+                            break;
+                        case "DL":
+                            applyDeleteLoan(Integer.parseInt(f[1]));
+                            break;
+                        case "M":
+                            metadataByIsbn.put(Long.parseLong(f[1]), new BookMetadata(f[1], f[2], f[3], f[4], f[5], f[6], Long.parseLong(f[7])));
+                            break;
+                        default:
+                            throw new IOException("Unknown operation " + f[0] + " on journal line " + lineNumber);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Corrupted journal line " + lineNumber + ": " + line, e);
+                }
+            }
+        }
+        // A compacted journal leaves out the deleted loans but the last one: their IDs have no L line
+        for (int id = 1; id <= lastLoanId; id++) {
+            if (loanUser[id] == 0) {
+                loanState[id] = DELETED;
+            }
+        }
+        return lineNumber;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    // ----- Helpers -----
+
+    private long[] sortedIsbns() {
+        if (sortedIsbns == null) {
+            sortedIsbns = stockByIsbn.sortedKeys();
+        }
+        return sortedIsbns;
+    }
+
+    private User[] usersByName() {
+        if (usersByName == null) {
+            usersByName = Arrays.stream(users, 0, lastUserId + 1).filter(Objects::nonNull).sorted(BY_NAME).toArray(User[]::new);
+        }
+        return usersByName;
+    }
+
+    private synchronized Loan loanOrNull(int id) {
+        return toLoan(id);
+    }
+
+    private void addLoanTo(List<Loan> loans, int id) {
+        Loan loan = toLoan(id);
+        if (loan != null) {
+            loans.add(loan);
+        }
+    }
+
+    /**
+     * Builds the loan of an ID, or null if it is deleted or its user no longer exists (like the SQL join).
+     */
+    private Loan toLoan(int id) {
+        if (id <= 0 || id > lastLoanId || loanState[id] == DELETED) {
+            return null;
+        }
+        int userId = loanUser[id];
+        if (userId <= 0 || userId > lastUserId || users[userId] == null) {
+            return null;
+        }
+        long isbn = loanIsbn[id];
+        return new Loan(id, copy(users[userId]), new Book(String.valueOf(isbn), stockByIsbn.get(isbn, 0)),
+                toDate(loanDay[id]), toDate(dueDay[id]), loanState[id] == RETURNED ? 1 : 0);
+    }
+
+    private static IntList indexOf(IntList[] index, int userId) {
+        return userId > 0 && userId < index.length ? index[userId] : null;
+    }
+
+    private static IntList[] addToIndex(IntList[] index, int userId, int loanId) {
+        if (userId >= index.length) {
+            index = Arrays.copyOf(index, Math.max(userId + 1, index.length * 2));
+        }
+        if (index[userId] == null) {
+            index[userId] = new IntList(4);
+        }
+        index[userId].add(loanId);
+        return index;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone());
+    }
+
+    /**
+     * Normalizes an ISBN to the numeric value of its ISBN-13.
+     *
+     * @param isbn The ISBN-10 or ISBN-13.
+     * @return The key, or -1 if the ISBN is not valid.
+     */
+    private static long isbnKey(String isbn) {
+        String isbn13 = IsbnValidator.toIsbn13(isbn);
+        return isbn13 == null ? -1 : Long.parseLong(isbn13);
+    }
+
+    private static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    private static int day(Date date) {
+        return (int) new java.sql.Date(date.getTime()).toLocalDate().toEpochDay();
+    }
+
+    private static Date toDate(int epochDay) {
+        return java.sql.Date.valueOf(LocalDate.ofEpochDay(epochDay));
+    }
+}
@@ -0,0 +1,207 @@
+package dao;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Export of the library to CSV files, for backups, spreadsheets or yearly statistics.
+ * <p>
+ * Each table is read through the streaming methods of the repositories, so the export holds one row
+ * at a time in memory whatever the size of the loans table. Each stream is closed with its file,
+ * which gives its database connection back to the pool. The files are in UTF-8, with a header line,
+ * fields separated by commas and quoted when needed as in RFC 4180.
+ * </p>
+ */
+public class LibraryExporter {
+
+    /**
+     * Number of rows written to each file.
+     */
+    public static final class Counts {
+        private final int books;
+        private final int users;
+        private final int loans;
+
+        Counts(int books, int users, int loans) {
+            this.books = books;
+            this.users = users;
+            this.loans = loans;
+        }
+
+        /**
+         * Gets the number of books written.
+         *
+         * @return The number of books.
+         */
+        public int getBooks() {
+            return books;
+        }
+
+        /**
+         * Gets the number of users written.
+         *
+         * @return The number of users.
+         */
+        public int getUsers() {
+            return users;
+        }
+
+        /**
+         * Gets the number of loans written.
+         *
+         * @return The number of loans.
+         */
+        public int getLoans() {
+            return loans;
+        }
+
+        @Override
+        public String toString() {
+            return books + " books, " + users + " users and " + loans + " loans";
+        }
+    }
+
+    private final BookRepository books;
+    private final UserRepository users;
+    private final LoanRepository loans;
+
+    /**
+     * Creates an exporter of the repositories of the application.
+     */
+    public LibraryExporter() {
+        this(Repositories.books(), Repositories.users(), Repositories.loans());
+    }
+
+    /**
+     * Creates an exporter of given repositories.
+     *
+     * @param books The book repository.
+     * @param users The user repository.
+     * @param loans The loan repository.
+     */
+    public LibraryExporter(BookRepository books, UserRepository users, LoanRepository loans) {
+        this.books = books;
+        this.users = users;
+        this.loans = loans;
+    }
+
+    /**
+     * Exports the books, the users and the loans to {@code books.csv}, {@code users.csv} and
+     * {@code loans.csv} in a directory, replacing the existing files.
+     *
+     * @param directory The directory.
+     * @return The number of rows written to each file.
+     * @throws IOException if a file cannot be written.
+     */
+    public Counts exportAll(Path directory) throws IOException {
+        int bookCount = exportBooks(directory.resolve("books.csv"));
+        int userCount = exportUsers(directory.resolve("users.csv"));
+        int loanCount = exportLoans(directory.resolve("loans.csv"));
+        return new Counts(bookCount, userCount, loanCount);
+    }
+
+    /**
+     * Exports the books and their stock.
+     *
+     * @param file The CSV file.
+     * @return The number of books written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int exportBooks(Path file) throws IOException {
+        return write(file, "isbn,stock", books.streamBooks(),
+                book -> new Object[] { book.getIsbn(), book.getStock() });
+    }
+
+    /**
+     * Exports the users.
+     *
+     * @param file The CSV file.
+     * @return The number of users written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int exportUsers(Path file) throws IOException {
+        return write(file, "id,last_name,first_name,email,address,phone", users.streamUsers(),
+                user -> new Object[] { user.getId(), user.getLastName(), user.getFirstName(), user.getEmail(), user.getAddress(), user.getPhone() });
+    }
+
+    /**
+     * Exports the loans, ordered by loan ID.
+     *
+     * @param file The CSV file.
+     * @return The number of loans written.
+     * @throws IOException if the file cannot be written.
+     */
+    public int exportLoans(Path file) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        return write(file, "id,user_id,isbn,date_loaned,due_date,returned", loans.streamLoans(),
+                loan -> new Object[] { loan.getId(), loan.getUser().getId(), loan.getBook().getIsbn(),
+                        format(dateFormat, loan.getLoanDate()), format(dateFormat, loan.getDueDate()), loan.getReturned() });
+    }
+
+    /**
+     * Writes the rows of a stream to a CSV file, closing the stream.
+     *
+     * @param file   The CSV file.
+     * @param header The header line.
+     * @param rows   The rows, closed once written or if the file cannot be written.
+     * @param fields The fields of a row.
+     * @param <T>    The type of the rows.
+     * @return The number of rows written.
+     * @throws IOException if the file cannot be written.
+     */
+    private static <T> int write(Path file, String header, Stream<T> rows, Function<T, Object[]> fields) throws IOException {
+        int count = 0;
+        try (Stream<T> stream = rows;
+             BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(header);
+            out.write("\r\n");
+            Iterator<T> it = stream.iterator();
+            while (it.hasNext()) {
+                writeRow(out, fields.apply(it.next()));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes one CSV line.
+     *
+     * @param out    The writer.
+     * @param fields The fields, null ones written as empty fields.
+     * @throws IOException if the line cannot be written.
+     */
+    private static void writeRow(Writer out, Object[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields[i] != null ? fields[i].toString() : "";
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                field = '"' + field.replace("\"", "\"\"") + '"';
+            }
+            out.write(field);
+        }
+        out.write("\r\n");
+    }
+
+    /**
+     * Formats a date as an ISO day.
+     *
+     * @param dateFormat The format.
+     * @param date       The date, or null.
+     * @return The formatted date, or null.
+     */
+    private static String format(SimpleDateFormat dateFormat, Date date) {
+        return date != null ? dateFormat.format(date) : null;
+    }
+}
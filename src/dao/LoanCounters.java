@@ -0,0 +1,111 @@
+package dao;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts of open loans maintained incrementally, so reading them does not scan the loans table.
+ * <p>
+ * It keeps the number of open loans of each user and the number of open loans due each day.
+ * The overdue count is the number of open loans due before today. It is rolled forward when the
+ * date changes by adding the loans due on the days that have just passed, so each read costs O(1)
+ * apart from the first read of a new day.
+ * </p>
+ * <p>
+ * The counters start empty and follow the checkouts, returns and deletions through
+ * {@link #addOpenLoans(int, long, int)} and {@link #removeOpenLoan(int, long)}. All methods are
+ * synchronized on the instance.
+ * </p>
+ */
+final class LoanCounters {
+
+    private final Map<Integer, Integer> activeByUser = new HashMap<>();
+    private final TreeMap<Long, Integer> openByDueDay = new TreeMap<>();
+    private long overdue; // Open loans due before overdueAsOf
+    private long overdueAsOf = today();
+
+    /**
+     * Empties the counters, which must then be rebuilt.
+     */
+    synchronized void clear() {
+        activeByUser.clear();
+        openByDueDay.clear();
+        overdue = 0;
+        overdueAsOf = today();
+    }
+
+    /**
+     * Counts new open loans.
+     *
+     * @param userId The borrowing user.
+     * @param dueDay The due date, as a day since the epoch.
+     * @param count  The number of loans of this user due that day.
+     */
+    synchronized void addOpenLoans(int userId, long dueDay, int count) {
+        activeByUser.merge(userId, count, Integer::sum);
+        openByDueDay.merge(dueDay, count, Integer::sum);
+        if (dueDay < overdueAsOf) {
+            overdue += count;
+        }
+    }
+
+    /**
+     * Stops counting a loan that was returned or deleted.
+     *
+     * @param userId The borrowing user.
+     * @param dueDay The due date, as a day since the epoch.
+     */
+    synchronized void removeOpenLoan(int userId, long dueDay) {
+        if (!openByDueDay.containsKey(dueDay)) {
+            return; // Not counted, the counters were cleared since the loan was opened
+        }
+        openByDueDay.computeIfPresent(dueDay, (day, count) -> count > 1 ? count - 1 : null);
+        activeByUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+        if (dueDay < overdueAsOf) {
+            overdue--;
+        }
+    }
+
+    /**
+     * Gets the number of open loans of a user.
+     *
+     * @param userId The user.
+     * @return The number of open loans.
+     */
+    synchronized int activeLoans(int userId) {
+        return activeByUser.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Gets the number of open loans due before today.
+     *
+     * @return The number of overdue loans.
+     */
+    synchronized int overdueLoans() {
+        long today = today();
+        if (today > overdueAsOf) {
+            // The loans due on the days since the last read are now overdue
+            for (int count : openByDueDay.subMap(overdueAsOf, true, today, false).values()) {
+                overdue += count;
+            }
+            overdueAsOf = today;
+        }
+        return (int) overdue;
+    }
+
+    /**
+     * Converts a date to a day since the epoch.
+     *
+     * @param date The date.
+     * @return The day.
+     */
+    static long toDay(java.util.Date date) {
+        return new java.sql.Date(date.getTime()).toLocalDate().toEpochDay();
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+}
@@ -3,6 +3,7 @@ package dao;
 import model.Loan;
 import model.User;
 import model.Book;
+import model.LateLoan;
 import util.databaseManager;
 
 import java.sql.Connection;
@@ -10,13 +11,61 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 
 /**
- * User Data Access Object (DAO) to manage database operations related to loans.
+ * User Data Access Object (DAO) to manage MySQL database operations related to loans.
+ * <p>
+ * The loan counts, the overdue count and the most borrowed books are read from the loans table at
+ * each call, through the indexes of {@code V2__loan_indexes.sql}. They are not kept in memory, since
+ * other desks may change the same database.
+ * </p>
  */
-public class LoanDao {
+public class LoanDao implements LoanRepository {
+
+    /** Reserves a copy of a book for a user under the loan limit: ISBN, user ID, limit. */
+    public static final String RESERVE_COPY_SQL = "UPDATE books SET stock = stock - 1 "
+            + "WHERE isbn = ? AND stock > 0 "
+            + "AND (SELECT COUNT(*) FROM loans WHERE user_id = ? AND returned = 0) < ?";
+    /** Books borrowed and not returned by a user: user ID. */
+    public static final String BORROWED_BOOKS_SQL = "SELECT b.isbn, b.stock FROM loans l JOIN books b ON l.book_isbn = b.isbn WHERE l.user_id = ? AND l.returned = 0";
+    /** Late loans with their user and book. */
+    public static final String LATE_LOANS_SQL = "SELECT l.id as loanId, l.date_loaned, l.due_date, l.returned, "
+            + "u.id as userId, u.firstName, u.lastName, u.email, u.address, u.phone, "
+            + "b.isbn as bookIsbn, b.stock "
+            + "FROM loans l "
+            + "JOIN users u ON l.user_id = u.id "
+            + "JOIN books b ON l.book_isbn = b.isbn "
+            + "WHERE l.due_date < CURDATE() AND l.returned = 0";
+    /** Late loans report, most overdue first. */
+    public static final String LATE_LOAN_REPORT_SQL = "SELECT l.id AS loanId, l.user_id AS userId, u.firstName, u.lastName, l.book_isbn AS bookIsbn, l.due_date, "
+            + "DATEDIFF(CURDATE(), l.due_date) AS daysLate "
+            + "FROM loans l "
+            + "JOIN users u ON l.user_id = u.id "
+            + "JOIN books b ON l.book_isbn = b.isbn "
+            + "WHERE l.due_date < CURDATE() AND l.returned = 0 "
+            + "ORDER BY l.due_date, l.id";
+    /** Open loans of a user: user ID. */
+    public static final String COUNT_ACTIVE_LOANS_SQL = "SELECT COUNT(*) FROM loans WHERE user_id = ? AND returned = 0";
+    /** Open loans past their due date. */
+    public static final String COUNT_OVERDUE_LOANS_SQL = "SELECT COUNT(*) FROM loans WHERE due_date < CURRENT_DATE AND returned=0";
+    /** Latest open loan of a book by a user, locked for its return: user ID, ISBN. */
+    public static final String FIND_OPEN_LOAN_SQL = "SELECT id FROM loans "
+            + "WHERE user_id = ? AND book_isbn = ? AND returned = 0 "
+            + "ORDER BY due_date DESC "
+            + "LIMIT 1 FOR UPDATE";
+    /** Marks a loan as returned: loan ID. */
+    public static final String RETURN_LOAN_SQL = "UPDATE loans SET returned = 1 WHERE id = ?";
+    /** Most borrowed books of the last days: days, maximum number of books. */
+    public static final String TOP_BOOKS_SQL = "SELECT book_isbn, COUNT(*) AS count FROM loans "
+            + "WHERE date_loaned >= CURDATE() - INTERVAL ? DAY "
+            + "GROUP BY book_isbn ORDER BY count DESC, book_isbn LIMIT ?";
+
+    private final BookDao bookDao = new BookDao();
 	
 	/**
      * Constructeur par défaut.
@@ -67,33 +116,83 @@ public class LoanDao {
         return loans;
     }
 
+    /**
+     * Method to stream all loans ordered by loan ID without loading them all in memory,
+     * for example for yearly statistics or exports.
+     * The stream holds a database connection and must be closed, for example with try-with-resources.
+     * @return a stream of all loans with their user and book.
+     */
+    public Stream<Loan> streamLoans() {
+        String sql = "SELECT l.id as loanId, l.date_loaned, l.due_date, l.returned, " +
+                     "u.id as userId, u.firstName, u.lastName, u.email, u.address, u.phone, " +
+                     "b.isbn as bookIsbn, b.stock " +
+                     "FROM loans l " +
+                     "JOIN users u ON l.user_id = u.id " +
+                     "JOIN books b ON l.book_isbn = b.isbn " +
+                     "ORDER BY l.id";
+        return ResultStreams.stream(sql, null, this::mapLoan);
+    }
+
     /**
      * Method to add a new loan to the database.
+     * The loan is recorded through {@link #checkout(int, String, java.util.Date, java.util.Date)}, so it is
+     * only inserted if a copy could be reserved in the same transaction.
      * @param loan the loan to be added.
      */
     public void addLoan(Loan loan) {
+        CheckoutResult result = checkout(loan.getUser().getId(), loan.getBook().getIsbn(), loan.getLoanDate(), loan.getDueDate());
+        if (result != CheckoutResult.OK) {
+            System.err.println("Loan not added for book with ISBN " + loan.getBook().getIsbn() + ": " + result);
+        }
+    }
+
+    /**
+     * Method to lend a book to a user in a single transaction.
+     * <p>
+     * The stock decrement is guarded by both the stock and the user's number of active loans, so the
+     * eligibility check, the stock reservation and the loan insertion take two statements and a commit.
+     * The reason of a refusal is only looked up when the reservation did not match any row.
+     * </p>
+     * @param userId the ID of the borrowing user.
+     * @param isbn the ISBN of the borrowed book.
+     * @param loanDate the date of the loan.
+     * @param dueDate the date the book must be returned.
+     * @return the outcome of the checkout.
+     */
+    public CheckoutResult checkout(int userId, String isbn, java.util.Date loanDate, java.util.Date dueDate) {
         String sqlLoan = "INSERT INTO loans (user_id, book_isbn, date_loaned, due_date) VALUES (?, ?, ?, ?)";
-        String sqlUpdateStock = "UPDATE books SET stock = stock - 1 WHERE isbn = ? AND stock > 0";
 
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmtLoan = conn.prepareStatement(sqlLoan);
-             PreparedStatement pstmtUpdateStock = conn.prepareStatement(sqlUpdateStock)) {
-
-            // Add the loan
-            pstmtLoan.setInt(1, loan.getUser().getId());
-            pstmtLoan.setString(2, loan.getBook().getIsbn());
-            pstmtLoan.setDate(3, new java.sql.Date(loan.getLoanDate().getTime()));
-            pstmtLoan.setDate(4, new java.sql.Date(loan.getDueDate().getTime()));
-            pstmtLoan.executeUpdate();
-
-            // Decrement the book stock
-            pstmtUpdateStock.setString(1, loan.getBook().getIsbn());
-            int affectedRows = pstmtUpdateStock.executeUpdate();
-            if (affectedRows == 0) {
-                System.err.println("No stock to decrement for book with ID: " + loan.getBook().getIsbn());
+        try (Connection conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmtReserve = conn.prepareStatement(RESERVE_COPY_SQL);
+                 PreparedStatement pstmtLoan = conn.prepareStatement(sqlLoan)) {
+
+                // Reserve a copy if the user is still under the limit
+                pstmtReserve.setString(1, isbn);
+                pstmtReserve.setInt(2, userId);
+                pstmtReserve.setInt(3, MAX_ACTIVE_LOANS);
+                if (pstmtReserve.executeUpdate() == 0) {
+                    conn.rollback();
+                    return countActiveLoans(conn, userId) >= MAX_ACTIVE_LOANS ? CheckoutResult.LIMIT_REACHED : CheckoutResult.NO_STOCK;
+                }
+
+                // Add the loan
+                pstmtLoan.setInt(1, userId);
+                pstmtLoan.setString(2, isbn);
+                pstmtLoan.setDate(3, new java.sql.Date(loanDate.getTime()));
+                pstmtLoan.setDate(4, new java.sql.Date(dueDate.getTime()));
+                pstmtLoan.executeUpdate();
+
+                conn.commit();
+                BookDao.invalidateStock(isbn);
+                return CheckoutResult.OK;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
-            System.err.println("Error adding loan and updating stock: " + e.getMessage());
+            System.err.println("Error during checkout: " + e.getMessage());
+            return CheckoutResult.ERROR;
         }
     }
 
@@ -119,9 +218,8 @@ public class LoanDao {
      */
     public List<Book> getBorrowedBooksByUser(int userId) {
         List<Book> borrowedBooks = new ArrayList<>();
-        String sql = "SELECT b.isbn, b.stock FROM loans l JOIN books b ON l.book_isbn = b.isbn WHERE l.user_id = ? AND l.returned = 0";
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(BORROWED_BOOKS_SQL)) {
             pstmt.setInt(1, userId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -158,43 +256,43 @@ public class LoanDao {
      */
     public List<Loan> getLateLoans() {
         List<Loan> loans = new ArrayList<>();
-        String sql = "SELECT l.id as loanId, l.date_loaned, l.due_date, l.returned, " +
-                     "u.id as userId, u.firstName, u.lastName, u.email, u.address, u.phone, " +
-                     "b.isbn as bookIsbn, b.stock " +
-                     "FROM loans l " +
-                     "JOIN users u ON l.user_id = u.id " +
-                     "JOIN books b ON l.book_isbn = b.isbn " +
-                     "WHERE l.due_date < CURDATE() AND l.returned = 0";
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql);
+             PreparedStatement pstmt = conn.prepareStatement(LATE_LOANS_SQL);
              ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-                User user = new User(
+                loans.add(mapLoan(rs));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching late loans: " + e.getMessage());
+        }
+        return loans;
+    }
+
+    /**
+     * Method to get the lines of the late loans report.
+     * The days late are computed by the database, so every line uses the same current date.
+     * @return a list of late loans, the most overdue first (earliest due date, then loan ID).
+     * @throws IllegalStateException if the report cannot be read, so an error is not shown as no late loans.
+     */
+    public List<LateLoan> getLateLoanReport() {
+        List<LateLoan> report = new ArrayList<>();
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(LATE_LOAN_REPORT_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                report.add(new LateLoan(
+                    rs.getInt("loanId"),
                     rs.getInt("userId"),
-                    rs.getString("lastName"),
-                    rs.getString("firstName"),
-                    rs.getString("email"),
-                    rs.getString("address"),
-                    rs.getString("phone")
-                );
-                Book book = new Book(
+                    rs.getString("firstName") + " " + rs.getString("lastName"),
                     rs.getString("bookIsbn"),
-                    rs.getInt("stock")
-                );
-                Loan loan = new Loan(
-                    rs.getInt("loanId"),
-                    user,
-                    book,
-                    rs.getDate("date_loaned"),
                     rs.getDate("due_date"),
-                    rs.getInt("returned")
-                );
-                loans.add(loan);
+                    rs.getInt("daysLate")
+                ));
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching late loans: " + e.getMessage());
+            throw new IllegalStateException("Error fetching the late loans report: " + e.getMessage(), e);
         }
-        return loans;
+        return report;
     }
 
     /**
@@ -203,29 +301,38 @@ public class LoanDao {
      * @return the count of active loans.
      */
     public int countActiveLoansByUser(int userId) {
-        String sql = "SELECT COUNT(*) FROM loans WHERE user_id = ? AND returned = 0";
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1); // Return the count of active loans
-            }
+        try (Connection conn = databaseManager.getConnection()) {
+            return countActiveLoans(conn, userId);
         } catch (SQLException e) {
             System.err.println("Error counting active loans: " + e.getMessage());
         }
         return 0;
     }
 
+    /**
+     * Count the active loans of a user on an existing connection.
+     * @param conn the connection to use.
+     * @param userId the ID of the user.
+     * @return the count of active loans.
+     * @throws SQLException if the query fails.
+     */
+    private int countActiveLoans(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(COUNT_ACTIVE_LOANS_SQL)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
     /**
      * Method to count the number of overdue loans.
      * @return the count of overdue loans.
      */
     public int countOverdueLoans() {
         int count = 0;
-        String sql = "SELECT COUNT(*) FROM loans WHERE due_date < CURRENT_DATE AND returned=0";
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql);
+             PreparedStatement pstmt = conn.prepareStatement(COUNT_OVERDUE_LOANS_SQL);
              ResultSet rs = pstmt.executeQuery()) {
             if (rs.next()) {
                 count = rs.getInt(1);
@@ -243,35 +350,45 @@ public class LoanDao {
      * @return true if the loan was successfully returned, false otherwise.
      */
     public boolean returnLoan(int userId, String isbn) {
-        String sqlReturnLoan = "UPDATE loans SET returned = 1 "
-                             + "WHERE user_id = ? AND book_isbn = ? AND returned = 0 "
-                             + "ORDER BY due_date DESC "
-                             + "LIMIT 1";
-
         String sqlUpdateStock = "UPDATE books SET stock = stock + 1 WHERE isbn = ?";
 
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmtReturnLoan = conn.prepareStatement(sqlReturnLoan);
-             PreparedStatement pstmtUpdateStock = conn.prepareStatement(sqlUpdateStock)) {
+        try (Connection conn = databaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmtFindLoan = conn.prepareStatement(FIND_OPEN_LOAN_SQL);
+                 PreparedStatement pstmtReturnLoan = conn.prepareStatement(RETURN_LOAN_SQL);
+                 PreparedStatement pstmtUpdateStock = conn.prepareStatement(sqlUpdateStock)) {
+
+                // Trouver le prêt le plus récent
+                pstmtFindLoan.setInt(1, userId);
+                pstmtFindLoan.setString(2, isbn);
+                int loanId;
+                try (ResultSet rs = pstmtFindLoan.executeQuery()) {
+                    if (!rs.next()) {
+                        conn.rollback();
+                        System.err.println("Aucun prêt trouvé à retourner pour l'utilisateur avec ID: " + userId + " et le livre avec l'ISBN: " + isbn);
+                        return false;
+                    }
+                    loanId = rs.getInt("id");
+                }
 
-            // Marquer le prêt comme retourné
-            pstmtReturnLoan.setInt(1, userId);
-            pstmtReturnLoan.setString(2, isbn);
-            int affectedRowsLoan = pstmtReturnLoan.executeUpdate();
+                // Marquer le prêt comme retourné
+                pstmtReturnLoan.setInt(1, loanId);
+                pstmtReturnLoan.executeUpdate();
 
-            if (affectedRowsLoan > 0) {
                 // Incrémenter le stock du livre
                 pstmtUpdateStock.setString(1, isbn);
-                int affectedRowsStock = pstmtUpdateStock.executeUpdate();
-                if (affectedRowsStock > 0) {
-                    return true;
-                } else {
+                if (pstmtUpdateStock.executeUpdate() == 0) {
+                    conn.rollback();
                     System.err.println("Erreur lors de l'incrémentation du stock pour le livre avec l'ISBN: " + isbn);
                     return false;
                 }
-            } else {
-                System.err.println("Aucun prêt trouvé à retourner pour l'utilisateur avec ID: " + userId + " et le livre avec l'ISBN: " + isbn);
-                return false;
+
+                conn.commit();
+                BookDao.invalidateStock(isbn);
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             System.err.println("Erreur lors du retour du livre et de la mise à jour du stock: " + e.getMessage());
@@ -284,48 +401,39 @@ public class LoanDao {
      * @return a list of top borrowed books.
      */
     public List<Book> fetchTopBooks() {
-        List<Book> topBooks = new ArrayList<>();
-        String sql = "SELECT book_isbn, COUNT(*) AS count FROM loans "
-                   + "WHERE date_loaned >= CURDATE() - INTERVAL 30 DAY "
-                   + "GROUP BY book_isbn ORDER BY count DESC LIMIT 3";
-
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                String isbn = rs.getString("book_isbn");
-                int stock = fetchStockForISBN(isbn); // Ensure this method is properly implemented
-                int loansCount = rs.getInt("count");
-                Book book = new Book(isbn, stock);
-                book.setLoansCount(loansCount); // Set the loan count
-                if (book.getTitle() != null && book.getAuthor() != null) {
-                    topBooks.add(book);
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Error fetching top borrowed books from the last 30 days: " + e.getMessage());
-        }
-        return topBooks;
+        return fetchTopBooks(3, 30);
     }
 
     /**
-     * Fetch stock from the database for a given ISBN.
-     * @param isbn the ISBN of the book.
-     * @return the stock of the book.
+     * Method to fetch the most borrowed books of a recent window.
+     * The stock of the returned books is read with a single batched query.
+     * @param k the maximum number of books.
+     * @param windowDays the window in days, one of 7, 30 or 90.
+     * @return the top borrowed books with their loan count, most borrowed first.
      */
-    private int fetchStockForISBN(String isbn) {
-        String sql = "SELECT stock FROM books WHERE isbn = ?";
+    public List<Book> fetchTopBooks(int k, int windowDays) {
+        List<Book> topBooks = new ArrayList<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
         try (Connection conn = databaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, isbn);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("stock");
+             PreparedStatement pstmt = conn.prepareStatement(TOP_BOOKS_SQL)) {
+            pstmt.setInt(1, windowDays);
+            pstmt.setInt(2, k);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString("book_isbn"), rs.getInt("count"));
+                }
             }
         } catch (SQLException e) {
-            System.err.println("Error fetching stock for ISBN: " + isbn + " - " + e.getMessage());
+            System.err.println("Error fetching top borrowed books of the last " + windowDays + " days: " + e.getMessage());
+            return topBooks;
         }
-        return 0; // Return default stock as 0 if not found or error
+        Map<String, Integer> stocks = bookDao.getStocks(new ArrayList<>(counts.keySet()));
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Book book = new Book(entry.getKey(), stocks.getOrDefault(entry.getKey(), 0));
+            book.setLoansCount(entry.getValue());
+            topBooks.add(book);
+        }
+        return topBooks;
     }
 
     /**
@@ -357,4 +465,33 @@ public class LoanDao {
         }
         return loans;
     }
+
+    /**
+     * Map the current row of a loan query selecting the loanId, userId and bookIsbn aliases.
+     * @param rs the result set positioned on the row.
+     * @return the loan with its user and book.
+     * @throws SQLException if a column is missing.
+     */
+    private Loan mapLoan(ResultSet rs) throws SQLException {
+        User user = new User(
+            rs.getInt("userId"),
+            rs.getString("lastName"),
+            rs.getString("firstName"),
+            rs.getString("email"),
+            rs.getString("address"),
+            rs.getString("phone")
+        );
+        Book book = new Book(
+            rs.getString("bookIsbn"),
+            rs.getInt("stock")
+        );
+        return new Loan(
+            rs.getInt("loanId"),
+            user,
+            book,
+            rs.getDate("date_loaned"),
+            rs.getDate("due_date"),
+            rs.getInt("returned")
+        );
+    }
 }
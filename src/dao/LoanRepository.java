@@ -0,0 +1,122 @@
+package dao;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import model.Book;
+import model.LateLoan;
+import model.Loan;
+import model.User;
+
+/**
+ * Storage operations on the loans.
+ * Implemented by {@link LoanDao} for MySQL and by {@link InMemoryLibrary} for the in-process engine.
+ */
+public interface LoanRepository {
+
+    /** Maximum number of books a user may borrow at the same time. */
+    int MAX_ACTIVE_LOANS = 3;
+
+    /**
+     * Retrieves all loans.
+     * @return a list of all loans.
+     */
+    List<Loan> getAllLoans();
+
+    /**
+     * Streams all loans ordered by loan ID. The stream must be closed.
+     * @return a stream of all loans.
+     */
+    Stream<Loan> streamLoans();
+
+    /**
+     * Records a loan, reserving a copy of the book.
+     * @param loan the loan to be added.
+     */
+    void addLoan(Loan loan);
+
+    /**
+     * Lends a book: checks the user's limit, reserves a copy and records the loan atomically.
+     * @param userId the ID of the borrowing user.
+     * @param isbn the ISBN of the borrowed book.
+     * @param loanDate the date of the loan.
+     * @param dueDate the date the book must be returned.
+     * @return the outcome of the checkout.
+     */
+    CheckoutResult checkout(int userId, String isbn, Date loanDate, Date dueDate);
+
+    /**
+     * Deletes a loan.
+     * @param loanId the ID of the loan.
+     */
+    void deleteLoan(int loanId);
+
+    /**
+     * Gets the books currently borrowed by a user.
+     * @param userId the ID of the user.
+     * @return the borrowed books.
+     */
+    List<Book> getBorrowedBooksByUser(int userId);
+
+    /**
+     * Gets the users with at least one loan not returned.
+     * @return the users with current loans.
+     */
+    List<User> getUsersWithCurrentLoans();
+
+    /**
+     * Gets the loans not returned whose due date is past.
+     * @return the late loans.
+     */
+    List<Loan> getLateLoans();
+
+    /**
+     * Gets the lines of the late loans report, with the days late computed on the day of the query.
+     * @return the late loans, the most overdue first.
+     * @throws IllegalStateException if the report cannot be read.
+     */
+    List<LateLoan> getLateLoanReport();
+
+    /**
+     * Counts the loans of a user that are not returned.
+     * @param userId the ID of the user.
+     * @return the count of active loans.
+     */
+    int countActiveLoansByUser(int userId);
+
+    /**
+     * Counts the loans not returned whose due date is past.
+     * @return the count of overdue loans.
+     */
+    int countOverdueLoans();
+
+    /**
+     * Returns the copy of a book borrowed by a user, giving it back to the stock.
+     * @param userId the ID of the user.
+     * @param isbn the ISBN of the book.
+     * @return true if a loan was returned, false otherwise.
+     */
+    boolean returnLoan(int userId, String isbn);
+
+    /**
+     * Gets the most borrowed books of the last 30 days.
+     * @return the top borrowed books with their loan count.
+     */
+    List<Book> fetchTopBooks();
+
+    /**
+     * Gets the most borrowed books of a recent window.
+     * @param k the maximum number of books.
+     * @param windowDays the window in days, one of 7, 30 or 90.
+     * @return the top borrowed books with their loan count, most borrowed first.
+     */
+    List<Book> fetchTopBooks(int k, int windowDays);
+
+    /**
+     * Gets all the loans of a user, returned or not.
+     * @param userId the ID of the user.
+     * @return the loans of the user.
+     */
+    List<Loan> getLoansByUser(int userId);
+}
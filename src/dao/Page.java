@@ -0,0 +1,99 @@
+package dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated query.
+ * <p>
+ * The continuation token identifies the last row of the page. Passing it back to the same DAO
+ * method returns the rows that follow it, so walking a table costs one indexed range scan per
+ * page whatever its position, and only one page is held in memory at a time.
+ * </p>
+ *
+ * @param <T> The type of the rows.
+ */
+public class Page<T> {
+
+    /** Page size used by the application when walking whole tables. */
+    public static final int DEFAULT_SIZE = 500;
+
+    private static final String SEPARATOR = "\u001F";
+
+    private final List<T> items;
+    private final String nextToken;
+
+    /**
+     * Creates a page.
+     *
+     * @param items     The rows of the page.
+     * @param nextToken The token of the next page, or null if this is the last page.
+     */
+    public Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Gets the rows of the page.
+     *
+     * @return The rows, in the order of the query.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the continuation token to pass to get the next page.
+     *
+     * @return The token, or null if this is the last page.
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Indicates whether more rows follow this page.
+     *
+     * @return True if there is a next page.
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * Encodes the sort key of the last row of a page into an opaque token.
+     *
+     * @param keys The values of the sort columns.
+     * @return The token.
+     */
+    static String encodeToken(Object... keys) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                joined.append(SEPARATOR);
+            }
+            joined.append(keys[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token created by {@link #encodeToken(Object...)}.
+     *
+     * @param token The token.
+     * @param size  The expected number of keys.
+     * @return The values of the sort columns.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    static String[] decodeToken(String token, int size) {
+        String joined = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] keys = joined.split(SEPARATOR, -1);
+        if (keys.length != size) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+        return keys;
+    }
+}
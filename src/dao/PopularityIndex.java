@@ -0,0 +1,165 @@
+package dao;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Sliding-window counts of loans per book, answering the most borrowed books without a query.
+ * <p>
+ * Loans are counted in one bucket per loan day, kept for the longest window. For each window of
+ * {@link #WINDOWS} the index also keeps the running total of each book over the days in the window,
+ * and subtracts the buckets that leave the window when the date changes. A window of {@code n} days
+ * counts the loans made since {@code n} days before today, like
+ * {@code date_loaned >= CURDATE() - INTERVAL n DAY}.
+ * </p>
+ * <p>
+ * A top-K read selects the K largest totals of a window with a heap of size K. All methods are
+ * synchronized on the instance.
+ * </p>
+ */
+final class PopularityIndex {
+
+    /** The supported windows, in days. */
+    static final int[] WINDOWS = { 7, 30, 90 };
+
+    private static final int RETENTION = WINDOWS[WINDOWS.length - 1];
+
+    private static final Comparator<Map.Entry<String, Integer>> MOST_BORROWED = Comparator
+            .comparing((Map.Entry<String, Integer> e) -> e.getValue()).reversed()
+            .thenComparing(Map.Entry::getKey);
+
+    private final TreeMap<Long, Map<String, Integer>> buckets = new TreeMap<>();
+    private final List<Map<String, Integer>> totals = new ArrayList<>(); // One per window
+    private long today = today();
+
+    /**
+     * Creates an empty index.
+     */
+    PopularityIndex() {
+        for (int i = 0; i < WINDOWS.length; i++) {
+            totals.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Empties the index, which must then be rebuilt.
+     */
+    synchronized void clear() {
+        buckets.clear();
+        totals.forEach(Map::clear);
+        today = today();
+    }
+
+    /**
+     * Counts loans of a book.
+     *
+     * @param isbn    The ISBN of the book.
+     * @param loanDay The loan date, as a day since the epoch.
+     * @param count   The number of loans.
+     */
+    synchronized void add(String isbn, long loanDay, int count) {
+        roll();
+        if (loanDay < today - RETENTION) {
+            return;
+        }
+        buckets.computeIfAbsent(loanDay, day -> new HashMap<>()).merge(isbn, count, Integer::sum);
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (loanDay >= today - WINDOWS[i]) {
+                merge(totals.get(i), isbn, count);
+            }
+        }
+    }
+
+    /**
+     * Stops counting a loan that was deleted.
+     *
+     * @param isbn    The ISBN of the book.
+     * @param loanDay The loan date, as a day since the epoch.
+     */
+    synchronized void remove(String isbn, long loanDay) {
+        roll();
+        Map<String, Integer> bucket = buckets.get(loanDay);
+        if (bucket == null || !bucket.containsKey(isbn)) {
+            return;
+        }
+        merge(bucket, isbn, -1);
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (loanDay >= today - WINDOWS[i]) {
+                merge(totals.get(i), isbn, -1);
+            }
+        }
+    }
+
+    /**
+     * Gets the most borrowed books of a window.
+     *
+     * @param k          The maximum number of books.
+     * @param windowDays The window, one of {@link #WINDOWS}.
+     * @return The ISBNs and their loan counts, most borrowed first.
+     * @throws IllegalArgumentException if the window is not supported.
+     */
+    synchronized List<Map.Entry<String, Integer>> top(int k, int windowDays) {
+        roll();
+        Map<String, Integer> window = totals.get(windowIndex(windowDays));
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        // Min-heap of the k best entries seen so far, the weakest at its head
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(k + 1, MOST_BORROWED.reversed());
+        for (Map.Entry<String, Integer> entry : window.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            } else if (MOST_BORROWED.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+        }
+        List<Map.Entry<String, Integer>> top = new ArrayList<>(heap);
+        top.sort(MOST_BORROWED);
+        return top;
+    }
+
+    /**
+     * Moves the windows forward to the current date, subtracting the buckets that left them.
+     */
+    private void roll() {
+        long now = today();
+        if (now <= today) {
+            return;
+        }
+        for (int i = 0; i < WINDOWS.length; i++) {
+            Map<String, Integer> window = totals.get(i);
+            // Days that were in the window yesterday and are not anymore
+            for (Map<String, Integer> bucket : buckets.subMap(today - WINDOWS[i], true, now - WINDOWS[i], false).values()) {
+                bucket.forEach((isbn, count) -> merge(window, isbn, -count));
+            }
+        }
+        buckets.headMap(now - RETENTION, false).clear();
+        today = now;
+    }
+
+    private static int windowIndex(int windowDays) {
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (WINDOWS[i] == windowDays) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported popularity window: " + windowDays + " days");
+    }
+
+    private static void merge(Map<String, Integer> counts, String isbn, int delta) {
+        counts.merge(isbn, delta, (count, d) -> count + d == 0 ? null : count + d);
+    }
+
+    private static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+}
@@ -0,0 +1,93 @@
+package dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Factory giving the repositories used by the application.
+ * <p>
+ * The storage is selected with the system property {@code cybook.storage}: {@code mysql} (default)
+ * uses the DAOs backed by the MySQL database, {@code memory} uses a single {@link InMemoryLibrary}
+ * persisted in the journal file {@code cybook.storage.journal} (default {@code cybook.journal}).
+ * Setting {@code cybook.storage.sync} to true forces the journal to disk after each operation.
+ * If the journal cannot be opened, the first use of the repositories fails with an
+ * {@link IllegalStateException} rather than running without persistence.
+ * </p>
+ */
+public final class Repositories {
+
+    private static final String STORAGE = System.getProperty("cybook.storage", "mysql");
+    private static final Path JOURNAL = Paths.get(System.getProperty("cybook.storage.journal", "cybook.journal"));
+    private static final boolean SYNC = Boolean.getBoolean("cybook.storage.sync");
+
+    private static final BookRepository books;
+    private static final LoanRepository loans;
+    private static final UserRepository users;
+    private static final BookMetadataRepository metadata;
+
+    static {
+        InMemoryLibrary library = null;
+        if (isInMemory()) {
+            try {
+                library = new InMemoryLibrary(JOURNAL, SYNC);
+            } catch (IOException e) {
+                // Running without the journal would lose every change made from now on
+                throw new IllegalStateException("Cannot open the storage journal " + JOURNAL + ": " + e.getMessage(), e);
+            }
+        }
+        books = library != null ? library : new BookDao();
+        loans = library != null ? library : new LoanDao();
+        users = library != null ? library : new UserDao();
+        metadata = library != null ? library : new BookMetadataDao();
+    }
+
+    private Repositories() {
+        // Static factory
+    }
+
+    /**
+     * Tells whether the application runs on the in-memory storage engine.
+     *
+     * @return true if {@code cybook.storage} is {@code memory}.
+     */
+    public static boolean isInMemory() {
+        return "memory".equalsIgnoreCase(STORAGE);
+    }
+
+    /**
+     * Gets the book repository.
+     *
+     * @return The shared book repository.
+     */
+    public static BookRepository books() {
+        return books;
+    }
+
+    /**
+     * Gets the loan repository.
+     *
+     * @return The shared loan repository.
+     */
+    public static LoanRepository loans() {
+        return loans;
+    }
+
+    /**
+     * Gets the user repository.
+     *
+     * @return The shared user repository.
+     */
+    public static UserRepository users() {
+        return users;
+    }
+
+    /**
+     * Gets the book metadata repository.
+     *
+     * @return The shared book metadata repository.
+     */
+    public static BookMetadataRepository metadata() {
+        return metadata;
+    }
+}
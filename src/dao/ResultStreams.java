@@ -0,0 +1,125 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import util.databaseManager;
+
+/**
+ * Helper turning a query into a lazily fetched {@link Stream}.
+ * <p>
+ * The statement is executed with a fetch size, which makes the MySQL driver read the result through
+ * a server-side cursor ({@code useCursorFetch}) {@link #FETCH_SIZE} rows at a time instead of
+ * buffering it whole. The connection stays borrowed until the stream is closed, so callers must
+ * consume the stream in a try-with-resources block.
+ * </p>
+ */
+final class ResultStreams {
+
+    /** Number of rows fetched from the server per round trip while streaming. */
+    static final int FETCH_SIZE = Integer.getInteger("cybook.db.streamFetchSize", 1000);
+
+    /**
+     * Sets the parameters of a streamed query.
+     */
+    interface ParameterBinder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+
+    /**
+     * Maps the current row of a result set.
+     *
+     * @param <T> The type of the mapped rows.
+     */
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private ResultStreams() {
+        // Static helper
+    }
+
+    /**
+     * Executes a query and returns its rows as a stream.
+     * An error while executing the query or reading the rows is thrown as an {@link IllegalStateException},
+     * so that a scan never ends silently on an empty or partial result.
+     *
+     * @param sql    The query.
+     * @param binder The parameter binder, or null if the query has no parameter.
+     * @param mapper The row mapper.
+     * @param <T>    The type of the rows.
+     * @return The stream of rows.
+     * @throws IllegalStateException if no connection is available or the query cannot be executed.
+     */
+    static <T> Stream<T> stream(String sql, ParameterBinder binder, RowMapper<T> mapper) {
+        Connection conn = databaseManager.getConnection();
+        if (conn == null) {
+            throw new IllegalStateException("No database connection available to stream rows");
+        }
+        PreparedStatement pstmt = null;
+        ResultSet rs;
+        try {
+            conn.setReadOnly(true);
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(FETCH_SIZE);
+            if (binder != null) {
+                binder.bind(pstmt);
+            }
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            closeAll(null, pstmt, conn);
+            throw new IllegalStateException("Error opening stream: " + e.getMessage(), e);
+        }
+
+        PreparedStatement statement = pstmt;
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error reading streamed rows: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> closeAll(rs, statement, conn));
+    }
+
+    /**
+     * Closes the resources of a stream, giving the connection back to the pool.
+     *
+     * @param rs    The result set, or null.
+     * @param pstmt The statement, or null.
+     * @param conn  The connection.
+     */
+    private static void closeAll(ResultSet rs, PreparedStatement pstmt, Connection conn) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+            if (pstmt != null) {
+                pstmt.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error closing stream: " + e.getMessage());
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error releasing streamed connection: " + e.getMessage());
+            }
+        }
+    }
+}
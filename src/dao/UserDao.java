@@ -2,22 +2,23 @@ package dao;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.stream.Stream;
 import model.User;
 import util.databaseManager;
 import util.UserValidator;
 import java.sql.*;
 
 /**
- * User Data Access Object (DAO) to manage database operations related to users.
+ * User Data Access Object (DAO) to manage MySQL database operations related to users.
  */
-public class UserDao {
-    private Connection conn;
+public class UserDao implements UserRepository {
 
     /**
-     * Constructor that initializes the database connection.
+     * Constructeur par défaut.
+     * Connections are borrowed from the pool for each operation.
      */
     public UserDao() {
-        this.conn = databaseManager.getConnection();
+        // Default constructor
     }
 
     /**
@@ -33,13 +34,19 @@ public class UserDao {
         }
 
         String sql = "INSERT INTO users (lastname, firstname, email, address, phone) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, user.getLastName());
             stmt.setString(2, user.getFirstName());
             stmt.setString(3, user.getEmail());
             stmt.setString(4, user.getAddress());
             stmt.setString(5, user.getPhone());
             stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    user.setId(keys.getInt(1)); // The user can be indexed and selected at once
+                }
+            }
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -60,7 +67,8 @@ public class UserDao {
         }
 
         String sql = "UPDATE users SET lastname = ?, firstname = ?, email = ?, address = ?, phone = ? WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, user.getLastName());
             stmt.setString(2, user.getFirstName());
             stmt.setString(3, user.getEmail());
@@ -83,7 +91,8 @@ public class UserDao {
      */
     public boolean deleteUser(int userId) {
         String sql = "DELETE FROM users WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             stmt.executeUpdate();
             return true;
@@ -101,7 +110,8 @@ public class UserDao {
     public List<User> getAllUsers() {
         List<User> users = new ArrayList<>();
         String sql = "SELECT id, lastname, firstname, email, address, phone FROM users";
-        try (Statement stmt = conn.createStatement();
+        try (Connection conn = databaseManager.getConnection();
+             Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
                 User user = new User(
@@ -119,4 +129,73 @@ public class UserDao {
         }
         return users;
     }
-}
\ No newline at end of file
+
+    /**
+     * Retrieves one page of users, ordered by last name, first name and ID.
+     * 
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @param pageSize the maximum number of users in the page.
+     * @return the page of users.
+     */
+    public Page<User> getUsersPage(String pageToken, int pageSize) {
+        List<User> users = new ArrayList<>();
+        String sql = "SELECT id, lastname, firstname, email, address, phone FROM users "
+                   + (pageToken == null ? "" : "WHERE (lastname, firstname, id) > (?, ?, ?) ")
+                   + "ORDER BY lastname, firstname, id LIMIT ?";
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (pageToken != null) {
+                String[] after = Page.decodeToken(pageToken, 3);
+                stmt.setString(index++, after[0]);
+                stmt.setString(index++, after[1]);
+                stmt.setInt(index++, Integer.parseInt(after[2]));
+            }
+            stmt.setInt(index, pageSize + 1); // One more row tells whether a next page exists
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(mapUser(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        String nextToken = null;
+        if (users.size() > pageSize) {
+            users.remove(pageSize);
+            User last = users.get(pageSize - 1);
+            nextToken = Page.encodeToken(last.getLastName(), last.getFirstName(), last.getId());
+        }
+        return new Page<>(users, nextToken);
+    }
+
+    /**
+     * Streams all users ordered by ID without loading them all in memory.
+     * The stream holds a database connection and must be closed, for example with try-with-resources.
+     * 
+     * @return a stream of all users.
+     */
+    public Stream<User> streamUsers() {
+        String sql = "SELECT id, lastname, firstname, email, address, phone FROM users ORDER BY id";
+        return ResultStreams.stream(sql, null, this::mapUser);
+    }
+
+    /**
+     * Maps the current row of a users query.
+     * 
+     * @param rs the result set positioned on the row.
+     * @return the user.
+     * @throws SQLException if a column is missing.
+     */
+    private User mapUser(ResultSet rs) throws SQLException {
+        return new User(
+            rs.getInt("id"),
+            rs.getString("lastname"),
+            rs.getString("firstname"),
+            rs.getString("email"),
+            rs.getString("address"),
+            rs.getString("phone")
+        );
+    }
+}
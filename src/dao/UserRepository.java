@@ -0,0 +1,54 @@
+package dao;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import model.User;
+
+/**
+ * Storage operations on the users.
+ * Implemented by {@link UserDao} for MySQL and by {@link InMemoryLibrary} for the in-process engine.
+ */
+public interface UserRepository {
+
+    /**
+     * Adds a new user after validating its fields. On success the ID given to the user is set on it.
+     * @param user the user to be added.
+     * @return true if the user is added successfully, false otherwise.
+     */
+    boolean addUser(User user);
+
+    /**
+     * Updates an existing user after validating its fields.
+     * @param user the user with updated information.
+     * @return true if the user is updated successfully, false otherwise.
+     */
+    boolean updateUser(User user);
+
+    /**
+     * Deletes a user.
+     * @param userId the ID of the user.
+     * @return true if the user is deleted successfully, false otherwise.
+     */
+    boolean deleteUser(int userId);
+
+    /**
+     * Retrieves all users.
+     * @return a list of all users.
+     */
+    List<User> getAllUsers();
+
+    /**
+     * Retrieves one page of users, ordered by last name, first name and ID.
+     * @param pageToken the token returned with the previous page, or null for the first page.
+     * @param pageSize the maximum number of users in the page.
+     * @return the page of users.
+     */
+    Page<User> getUsersPage(String pageToken, int pageSize);
+
+    /**
+     * Streams all users ordered by ID. The stream must be closed.
+     * @return a stream of all users.
+     */
+    Stream<User> streamUsers();
+}
@@ -0,0 +1,25 @@
+-- Baseline schema of CYBOOK, as described in the readme.
+-- Tables are only created if they do not exist, so existing databases are left untouched.
+
+CREATE TABLE IF NOT EXISTS books (
+    isbn VARCHAR(20) NOT NULL PRIMARY KEY,
+    stock INT NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS users (
+    id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    lastname VARCHAR(100) NOT NULL,
+    firstname VARCHAR(100) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    address VARCHAR(255) NOT NULL,
+    phone VARCHAR(20) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS loans (
+    id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    book_isbn VARCHAR(20) NOT NULL,
+    date_loaned DATE NOT NULL,
+    due_date DATE NOT NULL,
+    returned TINYINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,17 @@
+-- Indexes for the access paths of LoanDao and BookDao.
+-- Equality columns come first and range or sort columns last, so each index serves its queries
+-- without a filesort, and the extra trailing columns make them covering.
+-- SchemaMigrator skips an index that already exists, so the script can run again after a partial failure.
+
+-- countActiveLoansByUser, checkout, getBorrowedBooksByUser (user_id, returned)
+-- returnLoan (user_id, returned, book_isbn, ORDER BY due_date LIMIT 1)
+CREATE INDEX idx_loans_user_open ON loans (user_id, returned, book_isbn, due_date);
+
+-- countOverdueLoans, getLateLoans (returned = 0 AND due_date < today)
+CREATE INDEX idx_loans_overdue ON loans (returned, due_date);
+
+-- BookDao.getLoansCountForISBN (book_isbn, date_loaned in the last 30 days)
+CREATE INDEX idx_loans_book_date ON loans (book_isbn, date_loaned);
+
+-- fetchTopBooks (date_loaned in the last days of the window, GROUP BY book_isbn)
+CREATE INDEX idx_loans_date_book ON loans (date_loaned, book_isbn);
@@ -0,0 +1,14 @@
+-- Local copy of the bibliographic metadata of the BNF, so displaying a book does not need a network request.
+-- fetched_at tells the background refresh which rows are old.
+
+CREATE TABLE IF NOT EXISTS book_metadata (
+    isbn VARCHAR(20) NOT NULL PRIMARY KEY,
+    title VARCHAR(500) NOT NULL,
+    author VARCHAR(255) NOT NULL DEFAULT '',
+    edition VARCHAR(255) NOT NULL DEFAULT '',
+    publication_date VARCHAR(50) NOT NULL DEFAULT '',
+    collection VARCHAR(255) NOT NULL DEFAULT '',
+    fetched_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_book_metadata_fetched ON book_metadata (fetched_at);
@@ -0,0 +1,5 @@
+-- Index for the name order of UserDao.
+-- SchemaMigrator skips an index that already exists, so the script can run again after a partial failure.
+
+-- getUsersPage (WHERE (lastname, firstname, id) > (?, ?, ?) ORDER BY lastname, firstname, id LIMIT ?)
+CREATE INDEX idx_users_name ON users (lastname, firstname, id);
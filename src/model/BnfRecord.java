@@ -0,0 +1,122 @@
+package model;
+
+/**
+ * Represents a bibliographic record of the BNF catalogue, reduced to the UNIMARC fields used by the
+ * application: ISBN (010a), title (200a), author (700a), edition (205a), publication date (210d)
+ * and collection (225a). Missing fields are empty strings. Instances are immutable.
+ */
+public class BnfRecord {
+    private final String isbn; // 010a, ISBN printed in the record
+    private final String title; // 200a, title proper
+    private final String author; // 700a, main author
+    private final String edition; // 205a, edition statement
+    private final String publicationDate; // 210d, date of publication
+    private final String collection; // 225a, series title
+
+    /**
+     * Constructs a record.
+     *
+     * @param isbn            The ISBN of the record.
+     * @param title           The title of the book.
+     * @param author          The author of the book.
+     * @param edition         The edition of the book.
+     * @param publicationDate The publication date of the book.
+     * @param collection      The collection of the book.
+     */
+    public BnfRecord(String isbn, String title, String author, String edition, String publicationDate, String collection) {
+        this.isbn = orEmpty(isbn);
+        this.title = orEmpty(title);
+        this.author = orEmpty(author);
+        this.edition = orEmpty(edition);
+        this.publicationDate = orEmpty(publicationDate);
+        this.collection = orEmpty(collection);
+    }
+
+    /**
+     * Gets the ISBN printed in the record, which may differ in form from the ISBN that was searched.
+     *
+     * @return The ISBN of the record.
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the title of the book.
+     *
+     * @return The title of the book.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets the author of the book.
+     *
+     * @return The author of the book.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Gets the edition of the book.
+     *
+     * @return The edition of the book.
+     */
+    public String getEdition() {
+        return edition;
+    }
+
+    /**
+     * Gets the publication date of the book.
+     *
+     * @return The publication date of the book.
+     */
+    public String getPublicationDate() {
+        return publicationDate;
+    }
+
+    /**
+     * Gets the collection of the book.
+     *
+     * @return The collection of the book.
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Tells whether the record has a title.
+     *
+     * @return true if the title is not blank.
+     */
+    public boolean hasTitle() {
+        return !title.isBlank();
+    }
+
+    /**
+     * Converts the record to the metadata stored for a book of the catalogue.
+     *
+     * @param bookIsbn  The ISBN of the book in the catalogue.
+     * @param fetchedAt The time the record was read from the BNF, in milliseconds since the epoch.
+     * @return The metadata.
+     */
+    public BookMetadata toMetadata(String bookIsbn, long fetchedAt) {
+        return new BookMetadata(bookIsbn, title, author, edition, publicationDate, collection, fetchedAt);
+    }
+
+    /**
+     * Returns the string representation of the record.
+     *
+     * @return The title and author of the book.
+     */
+    @Override
+    public String toString() {
+        return title + " (" + author + ")";
+    }
+
+    private static String orEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -1,12 +1,15 @@
 package model;
 
-import api.BNFApiClient;
-
 /**
  * Represents a book with its ISBN, stock, and loan count.
+ * <p>
+ * A book only holds its own data. Its title and author are read from the {@link MetadataSource}
+ * shared by all the books, set once at startup with {@link #setMetadataSource(MetadataSource)}.
+ * </p>
  */
 public class Book {
-    private BNFApiClient apiClient = new BNFApiClient();
+    private static volatile MetadataSource metadataSource = MetadataSource.NONE; // Shared by all the books
+
     protected String isbn; // ISBN of the book
     protected int stock; // Stock of the book
     protected int loansCount; // Number of times the book has been loaned
@@ -22,6 +25,15 @@ public class Book {
         this.stock = stock;
     }
 
+    /**
+     * Sets the source of the titles and authors of all the books.
+     *
+     * @param source The source, or null to remove it.
+     */
+    public static void setMetadataSource(MetadataSource source) {
+        metadataSource = source != null ? source : MetadataSource.NONE;
+    }
+
     /**
      * Gets the ISBN of the book.
      *
@@ -41,21 +53,23 @@ public class Book {
     }
 
     /**
-     * Gets the title of the book by fetching it from the BNF API.
+     * Gets the title of the book from the shared metadata source.
      *
-     * @return The title of the book.
+     * @return The title of the book, or null if its metadata is not known yet.
      */
     public String getTitle() {
-        return apiClient.fetchTitle(this.isbn);
+        BookMetadata metadata = metadataSource.get(this.isbn);
+        return metadata != null ? metadata.getTitle() : null;
     }
 
     /**
-     * Gets the author of the book by fetching it from the BNF API.
+     * Gets the author of the book from the shared metadata source.
      *
-     * @return The author of the book.
+     * @return The author of the book, or null if its metadata is not known yet.
      */
     public String getAuthor() {
-        return apiClient.fetchAuthor(this.isbn);
+        BookMetadata metadata = metadataSource.get(this.isbn);
+        return metadata != null ? metadata.getAuthor() : null;
     }
 
     /**
@@ -0,0 +1,109 @@
+package model;
+
+/**
+ * Represents the bibliographic metadata of a book as found in the BNF catalogue:
+ * title, author, edition, publication date and collection. Instances are immutable.
+ */
+public class BookMetadata {
+    private final String isbn; // ISBN of the book
+    private final String title; // Title of the book
+    private final String author; // Author of the book
+    private final String edition; // Edition of the book
+    private final String publicationDate; // Publication date of the book
+    private final String collection; // Collection the book belongs to
+    private final long fetchedAt; // Time the metadata was read from the BNF, in milliseconds since the epoch
+
+    /**
+     * Constructs the metadata of a book.
+     *
+     * @param isbn            The ISBN of the book.
+     * @param title           The title of the book.
+     * @param author          The author of the book.
+     * @param edition         The edition of the book.
+     * @param publicationDate The publication date of the book.
+     * @param collection      The collection of the book.
+     * @param fetchedAt       The time the metadata was read from the BNF, in milliseconds since the epoch.
+     */
+    public BookMetadata(String isbn, String title, String author, String edition, String publicationDate, String collection, long fetchedAt) {
+        this.isbn = isbn;
+        this.title = title;
+        this.author = author;
+        this.edition = edition;
+        this.publicationDate = publicationDate;
+        this.collection = collection;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * Gets the ISBN of the book.
+     *
+     * @return The ISBN of the book.
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the title of the book.
+     *
+     * @return The title of the book.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Gets the author of the book.
+     *
+     * @return The author of the book.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Gets the edition of the book.
+     *
+     * @return The edition of the book.
+     */
+    public String getEdition() {
+        return edition;
+    }
+
+    /**
+     * Gets the publication date of the book.
+     *
+     * @return The publication date of the book.
+     */
+    public String getPublicationDate() {
+        return publicationDate;
+    }
+
+    /**
+     * Gets the collection of the book.
+     *
+     * @return The collection of the book.
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Gets the time the metadata was read from the BNF.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Returns the string representation of the metadata.
+     *
+     * @return The title and author of the book.
+     */
+    @Override
+    public String toString() {
+        return title + " (" + author + ")";
+    }
+}
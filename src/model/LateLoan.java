@@ -0,0 +1,100 @@
+package model;
+
+import java.util.Date;
+
+/**
+ * Represents a line of the late loans report: a loan not returned whose due date is past, with the
+ * name of its borrower and the number of days it is late, as computed by the storage on the day of
+ * the query. The title of the book is not part of it, it is resolved separately. Instances are immutable.
+ */
+public class LateLoan {
+    private final int loanId; // Unique identifier of the loan
+    private final int userId; // Identifier of the borrower
+    private final String borrower; // First name and last name of the borrower
+    private final String isbn; // ISBN of the borrowed book
+    private final Date dueDate; // Expected return date
+    private final int daysLate; // Days elapsed since the due date
+
+    /**
+     * Constructs a line of the late loans report.
+     *
+     * @param loanId   The identifier of the loan.
+     * @param userId   The identifier of the borrower.
+     * @param borrower The first name and last name of the borrower.
+     * @param isbn     The ISBN of the borrowed book.
+     * @param dueDate  The expected return date.
+     * @param daysLate The number of days elapsed since the due date.
+     */
+    public LateLoan(int loanId, int userId, String borrower, String isbn, Date dueDate, int daysLate) {
+        this.loanId = loanId;
+        this.userId = userId;
+        this.borrower = borrower;
+        this.isbn = isbn;
+        this.dueDate = dueDate;
+        this.daysLate = daysLate;
+    }
+
+    /**
+     * Gets the identifier of the loan.
+     *
+     * @return The identifier of the loan.
+     */
+    public int getLoanId() {
+        return loanId;
+    }
+
+    /**
+     * Gets the identifier of the borrower.
+     *
+     * @return The identifier of the borrower.
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Gets the name of the borrower.
+     *
+     * @return The first name and last name of the borrower.
+     */
+    public String getBorrower() {
+        return borrower;
+    }
+
+    /**
+     * Gets the ISBN of the borrowed book.
+     *
+     * @return The ISBN of the book.
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the expected return date.
+     *
+     * @return The due date of the loan.
+     */
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    /**
+     * Gets the number of days the loan is late.
+     *
+     * @return The number of days elapsed since the due date.
+     */
+    public int getDaysLate() {
+        return daysLate;
+    }
+
+    /**
+     * Returns a string representation of the line.
+     *
+     * @return A string containing the loan, the borrower, the ISBN and the days late.
+     */
+    @Override
+    public String toString() {
+        return "Loan " + loanId + " by " + borrower + " of " + isbn + ", " + daysLate + " day(s) late";
+    }
+}
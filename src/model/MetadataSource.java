@@ -0,0 +1,21 @@
+package model;
+
+/**
+ * Source of the bibliographic metadata of the books, used by {@link Book} to give its title and author.
+ * Implementations must be fast and must not make network requests, as they are called while rows are displayed.
+ */
+public interface MetadataSource {
+
+    /**
+     * Source used before another one is set: it knows no book.
+     */
+    MetadataSource NONE = isbn -> null;
+
+    /**
+     * Gets the metadata of a book.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The metadata, or null if it is not known.
+     */
+    BookMetadata get(String isbn);
+}
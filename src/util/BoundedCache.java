@@ -0,0 +1,233 @@
+package util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Thread-safe cache bounded by size and age.
+ * <p>
+ * Entries are evicted in least-recently-used order once the cache holds {@code maxSize} entries,
+ * and expire {@code ttlMillis} after they were stored. Hits, misses, evictions and expirations are
+ * counted so the cache can be sized from its {@link #toString()} report.
+ * </p>
+ * <p>
+ * {@link #get(Object, Function)} loads missing values outside the lock. A value loaded while its
+ * key was invalidated is returned to its caller but not stored, so an invalidation made by a write
+ * is never overwritten by a value read before that write. Only the loads of the invalidated key are
+ * dropped: the loads of other keys in flight at the same time are still stored.
+ * </p>
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * A cached value and its expiry time.
+     */
+    private static final class CachedValue<V> {
+        final V value;
+        final long expiresAt;
+
+        CachedValue(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, CachedValue<V>> entries;
+    // Key -> token of the loads in flight, removed by an invalidation of the key, guarded by this
+    private final Map<K, Object> loads = new HashMap<>();
+
+    // Counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param name      The name of the cache, used in its report.
+     * @param maxSize   The maximum number of entries.
+     * @param ttlMillis The time an entry stays valid after it was stored.
+     */
+    public BoundedCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached value.
+     *
+     * @param key The key.
+     * @return The value, or null if it is not cached or has expired.
+     */
+    public synchronized V getIfPresent(K key) {
+        CachedValue<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Gets a cached value, loading and storing it on a miss.
+     *
+     * @param key    The key.
+     * @param loader The function loading the value of a missing key. A null result is not cached.
+     * @return The cached or loaded value.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Object token;
+        synchronized (this) {
+            V cached = getIfPresent(key);
+            if (cached != null) {
+                return cached;
+            }
+            token = loads.computeIfAbsent(key, k -> new Object());
+        }
+        V value = null;
+        try {
+            value = loader.apply(key);
+        } finally {
+            synchronized (this) {
+                // The first load to finish stores its value, unless the key was invalidated meanwhile
+                if (loads.remove(key, token) && value != null) {
+                    entries.put(key, new CachedValue<>(value, System.currentTimeMillis() + ttlMillis));
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value, replacing the cached one.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CachedValue<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key.
+     */
+    public synchronized void invalidate(K key) {
+        loads.remove(key);
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void invalidateAll() {
+        loads.clear();
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries. Expired entries are otherwise only removed when they are read.
+     */
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<CachedValue<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached entries, including expired ones not removed yet.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of reads that found a valid entry.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of reads that found no valid entry.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of entries removed because the cache was full.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of entries removed because they were too old.
+     *
+     * @return The number of expirations.
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Gets the share of reads answered from the cache.
+     *
+     * @return The hit ratio, between 0 and 1.
+     */
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[size=%d/%d, ttl=%ds, hits=%d, misses=%d, hitRatio=%.1f%%, evictions=%d, expirations=%d]",
+                name, size(), maxSize, ttlMillis / 1000, hits.get(), misses.get(), getHitRatio() * 100,
+                evictions.get(), expirations.get());
+    }
+}
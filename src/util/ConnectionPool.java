@@ -0,0 +1,669 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections.
+ * <p>
+ * Connections handed out by {@link #borrow()} are proxies: calling {@code close()} on them
+ * returns the physical connection to the pool instead of closing it, so the DAOs can keep
+ * using try-with-resources exactly as before. Idle connections are reused in LIFO order,
+ * validated on borrow when they have been idle for a while, and evicted in the background
+ * once they exceed the idle timeout.
+ * </p>
+ * <p>
+ * Each pooled connection also keeps a bounded LRU cache of prepared statements keyed by
+ * their SQL text. Closing a cached statement only clears its parameters, so the next
+ * {@code prepareStatement} call with the same SQL on that connection skips the prepare
+ * round trip and, with server-side prepares enabled, the parse on the MySQL side.
+ * </p>
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits; // One permit per connection that may be handed out
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // Most recently used first
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    // Counters
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong saturationCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    /**
+     * Creates a pool. No connection is opened until {@link #warmUp()} or the first borrow.
+     *
+     * @param url                       JDBC URL of the database.
+     * @param connectionProperties      Driver properties, including the user and password.
+     * @param maxSize                   Maximum number of connections open at the same time.
+     * @param minIdle                   Number of idle connections kept open by warm-up and eviction.
+     * @param borrowTimeoutMillis       Maximum time a caller waits for a free connection.
+     * @param idleTimeoutMillis         Idle time after which a connection above {@code minIdle} is closed.
+     * @param validationThresholdMillis Idle time after which a connection is validated before being handed out.
+     * @param statementCacheSize        Maximum number of prepared statements cached per connection, 0 to disable.
+     */
+    public ConnectionPool(String url, Properties connectionProperties, int maxSize, int minIdle,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long validationThresholdMillis,
+                          int statementCacheSize) {
+        if (maxSize <= 0 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: max=" + maxSize + ", minIdle=" + minIdle);
+        }
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationThresholdMillis = validationThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cybook-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens connections until {@code minIdle} of them are idle in the pool.
+     */
+    public void warmUp() {
+        while (!closed && idleCount() < minIdle && totalConnections.get() < maxSize) {
+            try {
+                PooledConnection pooled = open();
+                synchronized (idle) {
+                    idle.addLast(pooled);
+                }
+            } catch (SQLException e) {
+                System.err.println("Error warming up connection pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the borrow timeout if all are in use.
+     * The returned connection must be closed to give it back.
+     *
+     * @return A pooled connection.
+     * @throws SQLException if the pool is closed, exhausted or the database is unreachable.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        if (!permits.tryAcquire()) {
+            saturationCount.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Connection pool exhausted: no connection available after " + borrowTimeoutMillis + "ms");
+            }
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            recordWait(System.nanoTime() - start);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the evictor. Borrowed connections are closed when returned.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        synchronized (idle) {
+            for (PooledConnection pooled : idle) {
+                pooled.closePhysical();
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, validating it if it has been idle long enough.
+     *
+     * @return A usable idle connection, or null if none is available.
+     */
+    private PooledConnection takeIdle() {
+        while (true) {
+            PooledConnection pooled;
+            synchronized (idle) {
+                pooled = idle.pollFirst();
+            }
+            if (pooled == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - pooled.lastReleased < validationThresholdMillis || pooled.isValid()) {
+                return pooled;
+            }
+            invalidCount.incrementAndGet();
+            pooled.closePhysical();
+        }
+    }
+
+    /**
+     * Opens a new physical connection.
+     *
+     * @return The new pooled connection.
+     * @throws SQLException if the connection could not be established.
+     */
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, connectionProperties);
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Gives a connection back to the pool, or closes it if it is broken or the pool is closed.
+     *
+     * @param pooled The connection being released.
+     */
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || !pooled.reset()) {
+                pooled.closePhysical();
+            } else {
+                pooled.lastReleased = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addFirst(pooled);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes idle connections that exceeded the idle timeout, keeping at least {@code minIdle} open.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        synchronized (idle) {
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && idle.size() > minIdle) {
+                PooledConnection pooled = oldestFirst.next();
+                if (now - pooled.lastReleased > idleTimeoutMillis) {
+                    oldestFirst.remove();
+                    pooled.closePhysical();
+                    evictedCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the time a borrow call spent waiting.
+     *
+     * @param nanos The wait time in nanoseconds.
+     */
+    private void recordWait(long nanos) {
+        borrowCount.incrementAndGet();
+        totalBorrowWaitNanos.addAndGet(nanos);
+        maxBorrowWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Gets the number of idle connections.
+     *
+     * @return The number of idle connections.
+     */
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Gets the number of connections currently borrowed.
+     *
+     * @return The number of connections in use.
+     */
+    public int activeCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of physical connections currently open.
+     *
+     * @return The number of open connections.
+     */
+    public int totalCount() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Gets the number of successful borrows.
+     *
+     * @return The borrow count.
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Gets the average time spent waiting for a connection.
+     *
+     * @return The average borrow wait in microseconds.
+     */
+    public double getAverageBorrowWaitMicros() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : totalBorrowWaitNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * Gets the longest time spent waiting for a connection.
+     *
+     * @return The maximum borrow wait in microseconds.
+     */
+    public double getMaxBorrowWaitMicros() {
+        return maxBorrowWaitNanos.get() / 1000.0;
+    }
+
+    /**
+     * Gets the number of borrows that found every connection in use and had to wait.
+     *
+     * @return The saturation count.
+     */
+    public long getSaturationCount() {
+        return saturationCount.get();
+    }
+
+    /**
+     * Gets the number of borrows that gave up after the borrow timeout.
+     *
+     * @return The timeout count.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Gets the number of prepared statements served from a connection's statement cache.
+     *
+     * @return The statement cache hit count.
+     */
+    public long getStatementCacheHits() {
+        return statementHits.get();
+    }
+
+    /**
+     * Gets the number of prepared statements that had to be prepared on the server.
+     *
+     * @return The statement cache miss count.
+     */
+    public long getStatementCacheMisses() {
+        return statementMisses.get();
+    }
+
+    /**
+     * Gets the ratio of prepared statements served from the statement caches.
+     *
+     * @return The hit ratio between 0 and 1.
+     */
+    public double getStatementCacheHitRatio() {
+        long hits = statementHits.get();
+        long total = hits + statementMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns a one-line summary of the pool counters.
+     *
+     * @return The pool statistics.
+     */
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[active=%d, idle=%d, total=%d/%d, borrows=%d, avgWait=%.1fus, maxWait=%.1fus, "
+                + "saturated=%d, timeouts=%d, created=%d, evicted=%d, invalid=%d, "
+                + "stmtHits=%d, stmtMisses=%d, stmtEvictions=%d]",
+                activeCount(), idleCount(), totalCount(), maxSize, borrowCount.get(), getAverageBorrowWaitMicros(),
+                getMaxBorrowWaitMicros(), saturationCount.get(), timeoutCount.get(), createdCount.get(),
+                evictedCount.get(), invalidCount.get(), statementHits.get(), statementMisses.get(),
+                statementEvictions.get());
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastReleased = System.currentTimeMillis();
+        // SQL text -> cached statement, least recently used first
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            totalConnections.incrementAndGet();
+        }
+
+        /**
+         * Creates a new handle for one borrow. Each handle can only be closed once.
+         *
+         * @return A proxy connection returning itself to the pool on close.
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new Handle(this));
+        }
+
+        /**
+         * Checks that the connection still answers.
+         *
+         * @return true if the connection is usable, false otherwise.
+         */
+        boolean isValid() {
+            try {
+                return physical.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Restores the default connection state before putting it back in the pool.
+         *
+         * @return true if the connection can be reused, false if it must be closed.
+         */
+        boolean reset() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (physical.isReadOnly()) {
+                    physical.setReadOnly(false);
+                }
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the cached statement for this SQL text, preparing and caching it on a miss.
+         * If the cached statement is already in use (two open statements with the same SQL),
+         * an uncached statement is prepared instead.
+         *
+         * @param sql The SQL text.
+         * @return A prepared statement whose close keeps it cached.
+         * @throws SQLException if the statement could not be prepared.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            if (statementCacheSize <= 0) {
+                statementMisses.incrementAndGet();
+                return physical.prepareStatement(sql);
+            }
+            CachedStatement cached;
+            synchronized (statements) {
+                cached = statements.get(sql);
+            }
+            if (cached != null) {
+                PreparedStatement statement = cached.checkOut();
+                if (statement == null) {
+                    statementMisses.incrementAndGet();
+                    return physical.prepareStatement(sql);
+                }
+                statementHits.incrementAndGet();
+                return statement;
+            }
+
+            statementMisses.incrementAndGet();
+            cached = new CachedStatement(physical.prepareStatement(sql));
+            synchronized (statements) {
+                statements.put(sql, cached);
+                if (statements.size() > statementCacheSize) {
+                    Iterator<CachedStatement> eldest = statements.values().iterator();
+                    CachedStatement evicted = eldest.next();
+                    eldest.remove();
+                    statementEvictions.incrementAndGet();
+                    evicted.evict();
+                }
+            }
+            return cached.checkOut();
+        }
+
+        /**
+         * Closes the physical connection.
+         */
+        void closePhysical() {
+            totalConnections.decrementAndGet();
+            synchronized (statements) {
+                for (CachedStatement cached : statements.values()) {
+                    cached.evict();
+                }
+                statements.clear();
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing pooled connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Proxy handler for a borrowed connection.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!released) {
+                            released = true;
+                            release(pooled);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "prepareStatement":
+                    if (args.length == 1 && !released) {
+                        return pooled.prepare((String) args[0]);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open in a connection's statement cache.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement physical;
+        private final List<ResultSet> openResults = new ArrayList<>();
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Marks the statement as used and returns a proxy whose close gives it back to the cache.
+         * Each checkout gets its own proxy, which can only be closed once: a proxy kept after its
+         * close cannot reach the statement checked out again by someone else.
+         *
+         * @return The statement proxy, or null if the statement is already in use or evicted.
+         */
+        synchronized PreparedStatement checkOut() {
+            if (inUse || evicted) {
+                return null;
+            }
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new Checkout());
+        }
+
+        /**
+         * Removes the statement from the cache, closing it now or when its current user closes it.
+         */
+        synchronized void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        /**
+         * Resets the statement so the next user sees a fresh one.
+         */
+        private synchronized void checkIn() {
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                openResults.clear();
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                evicted = true;
+            }
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Proxy handler for one checkout of the statement.
+         */
+        private final class Checkout implements InvocationHandler {
+            private volatile boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            checkIn();
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                if (closed) {
+                    throw new SQLException("Statement has already been closed");
+                }
+                try {
+                    Object result = method.invoke(physical, args);
+                    if (result instanceof ResultSet) {
+                        synchronized (CachedStatement.this) {
+                            openResults.add((ResultSet) result);
+                        }
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+}
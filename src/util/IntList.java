@@ -0,0 +1,81 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive {@code int} values, used for the secondary indexes of the in-memory
+ * storage engine. Not thread-safe.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates an empty list.
+     *
+     * @param initialCapacity The initial capacity.
+     */
+    public IntList(int initialCapacity) {
+        values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Appends a value.
+     *
+     * @param value The value.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the first occurrence of a value. The order of the remaining values is not kept.
+     *
+     * @param value The value.
+     * @return True if the value was present.
+     */
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                values[i] = values[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param index The index, between 0 and size - 1.
+     * @return The value.
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Gets the number of values.
+     *
+     * @return The size of the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indicates whether the list is empty.
+     *
+     * @return True if the list has no value.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,127 @@
+package util;
+
+/**
+ * Utility class for normalizing and validating ISBNs.
+ * It accepts ISBN-10, ISBN-13 and EAN-13 barcodes of books, with or without hyphens and spaces.
+ */
+public class IsbnValidator {
+
+    /**
+     * Constructeur par défaut.
+     */
+    public IsbnValidator() {
+        // Default constructor
+    }
+
+    /**
+     * Removes the separators of an ISBN.
+     *
+     * @param isbn The ISBN as typed or scanned.
+     * @return The ISBN without hyphens and spaces and with an upper-case check character, or null if the input is null.
+     */
+    public static String normalize(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(13);
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == 'x' || c == 'X') {
+                digits.append('X');
+            } else if (c != '-' && c != ' ') {
+                digits.append(c); // Kept so that the checksum validation rejects it
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Validates an ISBN-10 or ISBN-13 (EAN-13 book barcode) with its check digit.
+     *
+     * @param isbn The ISBN to validate, with or without separators.
+     * @return True if the ISBN is valid, false otherwise.
+     */
+    public static boolean isValidIsbn(String isbn) {
+        String digits = normalize(isbn);
+        if (digits == null) {
+            return false;
+        }
+        if (digits.length() == 10) {
+            return isValidIsbn10(digits);
+        }
+        if (digits.length() == 13) {
+            return isValidIsbn13(digits);
+        }
+        return false;
+    }
+
+    /**
+     * Converts a valid ISBN to its 13-digit form.
+     *
+     * @param isbn The ISBN-10 or ISBN-13, with or without separators.
+     * @return The ISBN-13, or null if the ISBN is not valid.
+     */
+    public static String toIsbn13(String isbn) {
+        if (!isValidIsbn(isbn)) {
+            return null;
+        }
+        String digits = normalize(isbn);
+        if (digits.length() == 13) {
+            return digits;
+        }
+        String body = "978" + digits.substring(0, 9);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = body.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return body + ((10 - sum % 10) % 10);
+    }
+
+    /**
+     * Validates the check digit of a normalized ISBN-10.
+     *
+     * @param digits The 10 characters of the ISBN.
+     * @return True if the check digit matches.
+     */
+    private static boolean isValidIsbn10(String digits) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = digits.charAt(i);
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if (c == 'X' && i == 9) {
+                value = 10;
+            } else {
+                return false;
+            }
+            sum += value * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    /**
+     * Validates the check digit of a normalized ISBN-13, which must start with the book prefix 978 or 979.
+     *
+     * @param digits The 13 characters of the ISBN.
+     * @return True if the check digit matches.
+     */
+    private static boolean isValidIsbn13(String digits) {
+        if (!digits.startsWith("978") && !digits.startsWith("979")) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 13; i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            int digit = c - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return sum % 10 == 0;
+    }
+}
@@ -0,0 +1,176 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to {@code int} values.
+ * It avoids the boxing and the entry objects of a {@code HashMap<Long, Integer>}: the whole map is
+ * two arrays. The key {@link Long#MIN_VALUE} is reserved to mark free slots. Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    /**
+     * Receives the entries of the map.
+     */
+    public interface EntryConsumer {
+        /**
+         * Called once per entry.
+         *
+         * @param key   The key.
+         * @param value The value.
+         */
+        void accept(long key, int value);
+    }
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates a map able to hold the given number of entries before growing.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key          The key.
+     * @param defaultValue The value returned if the key is absent.
+     * @return The value, or the default value.
+     */
+    public int get(long key, int defaultValue) {
+        int slot = find(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Indicates whether a key is present.
+     *
+     * @param key The key.
+     * @return True if the key has a value.
+     */
+    public boolean containsKey(long key) {
+        return keys[find(key)] == key;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   The key, which must not be {@link Long#MIN_VALUE}.
+     * @param value The value.
+     */
+    public void put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Reserved key");
+        }
+        int slot = find(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = value;
+                rehash(keys.length << 1);
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds a delta to the value of a key, starting from 0 if the key is absent.
+     *
+     * @param key   The key.
+     * @param delta The amount to add.
+     * @return The new value.
+     */
+    public int addTo(long key, int delta) {
+        int value = get(key, 0) + delta;
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The size of the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls a consumer for each entry, in no particular order.
+     *
+     * @param consumer The consumer.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies the keys in ascending order.
+     *
+     * @return A new sorted array of the keys.
+     */
+    public long[] sortedKeys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long key : keys) {
+            if (key != FREE) {
+                result[i++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Finds the slot of a key, or the free slot where it would be inserted.
+     *
+     * @param key The key.
+     * @return The slot index.
+     */
+    private int find(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
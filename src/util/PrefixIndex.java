@@ -0,0 +1,387 @@
+package util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe in-memory index finding items from the beginnings of the words of some of their fields,
+ * for type-ahead selectors.
+ * <p>
+ * The fields of each item are folded (lower case, without accents) and cut into words, and each word is
+ * kept in a sorted map to the items that contain it, in the order of the index. A field of several
+ * words is also indexed as one word without its separators, so a phone number or an ISBN can be typed
+ * without spaces. A query matches the items having, for each of its words, a word starting with it,
+ * or a word starting with its words put together, so a phone number typed with spaces is found. The
+ * candidates are read from the words starting with the longest query word, and reading stops after
+ * {@code MIN_MATCHES} matches or {@code MAX_CANDIDATES} candidates, so a search costs about the same
+ * whatever the size of the index; a query that matches more items than that returns the first ones in
+ * the order of the index.
+ * </p>
+ * <p>
+ * Results are ranked by the number of query words matching a whole word, then by the fields they
+ * match, the first field given ranking highest, then by the order of the index.
+ * </p>
+ *
+ * @param <T> The type of the items.
+ */
+public class PrefixIndex<T> {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_CANDIDATES = 2_000; // Items scored at most by a search
+    private static final int MIN_MATCHES = 100; // Matching items after which a search stops reading candidates
+
+    /**
+     * An indexed item and its words.
+     */
+    private static final class Entry<T> {
+        final T item;
+        final String[] words;
+        final int[] fields; // Field of each word
+        final String text; // The words, each after a space, to filter the candidates with one scan per term
+
+        Entry(T item, String[] words, int[] fields) {
+            this.item = item;
+            this.words = words;
+            this.fields = fields;
+            this.text = " " + String.join(" ", words);
+        }
+    }
+
+    private final Function<? super T, ?> keyOf;
+    private final Function<? super T, String[]> fieldsOf;
+    private final Comparator<? super T> order;
+    private final Map<Object, Entry<T>> entries = new HashMap<>();
+    private final NavigableMap<String, List<Entry<T>>> postings = new TreeMap<>();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param keyOf    The key identifying an item, used to replace or remove it.
+     * @param fieldsOf The searchable fields of an item, the most relevant first. A field may be null.
+     * @param order    The order of the items ranked equally.
+     */
+    public PrefixIndex(Function<? super T, ?> keyOf, Function<? super T, String[]> fieldsOf, Comparator<? super T> order) {
+        this.keyOf = keyOf;
+        this.fieldsOf = fieldsOf;
+        this.order = order;
+    }
+
+    /**
+     * Folds a text for comparison: lower case, without accents.
+     *
+     * @param text The text.
+     * @return The folded text, empty if the text is null.
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (isAscii(text)) {
+            return text.toLowerCase(Locale.ROOT); // Nothing to strip, as for most emails, phones and ISBNs
+        }
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Tells whether a text has only ASCII characters.
+     *
+     * @param text The text.
+     * @return true if no character has to be decomposed.
+     */
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an item, or replaces the item with the same key.
+     *
+     * @param item The item.
+     */
+    public synchronized void put(T item) {
+        Entry<T> entry = add(item);
+        for (String word : entry.words) {
+            List<Entry<T>> items = postings.computeIfAbsent(word, key -> new ArrayList<>(1));
+            items.add(insertionPoint(items, item), entry);
+        }
+    }
+
+    /**
+     * Adds many items, replacing the items with the same keys. Each list of items touched is sorted
+     * once, rather than each item being inserted in place.
+     *
+     * @param items The items.
+     */
+    public synchronized void putAll(Collection<? extends T> items) {
+        Set<List<Entry<T>>> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (T item : items) {
+            Entry<T> entry = add(item);
+            for (String word : entry.words) {
+                List<Entry<T>> wordItems = postings.computeIfAbsent(word, key -> new ArrayList<>(1));
+                wordItems.add(entry);
+                touched.add(wordItems);
+            }
+        }
+        for (List<Entry<T>> wordItems : touched) {
+            wordItems.sort((a, b) -> order.compare(a.item, b.item));
+        }
+    }
+
+    /**
+     * Replaces the entry of an item by a new one with its words, without adding it to the lists of its words.
+     *
+     * @param item The item.
+     * @return The new entry.
+     */
+    private Entry<T> add(T item) {
+        remove(keyOf.apply(item));
+        Set<String> words = new LinkedHashSet<>();
+        List<Integer> fields = new ArrayList<>();
+        String[] values = fieldsOf.apply(item);
+        for (int field = 0; field < values.length; field++) {
+            String[] fieldWords = words(values[field]);
+            for (String word : fieldWords) {
+                if (words.add(word)) {
+                    fields.add(field);
+                }
+            }
+            if (fieldWords.length > 1 && words.add(String.join("", fieldWords))) {
+                fields.add(field);
+            }
+        }
+        int[] fieldOfWord = new int[fields.size()];
+        for (int i = 0; i < fieldOfWord.length; i++) {
+            fieldOfWord[i] = fields.get(i);
+        }
+        Entry<T> entry = new Entry<>(item, words.toArray(new String[0]), fieldOfWord);
+        entries.put(keyOf.apply(item), entry);
+        return entry;
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param key The key of the item.
+     * @return true if the item was indexed.
+     */
+    public synchronized boolean remove(Object key) {
+        Entry<T> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        for (String word : entry.words) {
+            List<Entry<T>> items = postings.get(word);
+            if (items != null) {
+                int at = insertionPoint(items, entry.item) - 1; // Last item not after it
+                while (at >= 0 && items.get(at) != entry) {
+                    at--;
+                }
+                items.remove(at >= 0 ? at : items.indexOf(entry));
+                if (items.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the items.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        postings.clear();
+    }
+
+    /**
+     * Gets an indexed item.
+     *
+     * @param key The key of the item.
+     * @return The item, or null if it is not indexed.
+     */
+    public synchronized T get(Object key) {
+        Entry<T> entry = entries.get(key);
+        return entry != null ? entry.item : null;
+    }
+
+    /**
+     * Gets the number of indexed items.
+     *
+     * @return The number of items.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds the best items for a query.
+     *
+     * @param query The words typed, in any case and with or without accents.
+     * @param limit The maximum number of items returned.
+     * @return The matching items, best first, empty if the query has no word.
+     */
+    public synchronized List<T> search(String query, int limit) {
+        String[] terms = words(query);
+        if (terms.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        Map<Entry<T>, Integer> scores = new IdentityHashMap<>();
+        List<Entry<T>> matches = new ArrayList<>();
+        collect(terms, 1, limit, scores, matches);
+        if (terms.length > 1) {
+            // The words typed may also be one word written with spaces, as a phone number
+            collect(new String[] { String.join("", terms) }, terms.length, limit, scores, matches);
+        }
+        matches.sort((a, b) -> {
+            int byScore = Integer.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : order.compare(a.item, b.item);
+        });
+        List<T> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(matches.get(i).item);
+        }
+        return result;
+    }
+
+    /**
+     * Scores the candidates of some terms, read from the words starting with the longest term, the whole
+     * word first, each word in the order of the index, until enough of them match.
+     *
+     * @param terms   The folded terms.
+     * @param weight  The factor of the scores, to compare them with the scores of more terms.
+     * @param limit   The maximum number of items returned by the search.
+     * @param scores  The score of each matching item found so far; completed.
+     * @param matches The matching items; completed.
+     */
+    private void collect(String[] terms, int weight, int limit, Map<Entry<T>, Integer> scores, List<Entry<T>> matches) {
+        String driver = terms[0];
+        for (String term : terms) {
+            if (term.length() > driver.length()) {
+                driver = term;
+            }
+        }
+        String[] others = new String[terms.length - 1]; // The other terms, each after a space
+        int other = 0;
+        for (String term : terms) {
+            if (term != driver) {
+                others[other++] = " " + term;
+            }
+        }
+        int scanned = 0;
+        int found = 0;
+        for (List<Entry<T>> items : postings.subMap(driver, true, driver + Character.MAX_VALUE, false).values()) {
+            for (Entry<T> entry : items) {
+                if (++scanned > MAX_CANDIDATES || found >= Math.max(MIN_MATCHES, limit)) {
+                    return;
+                }
+                if (!containsAll(entry.text, others)) {
+                    continue;
+                }
+                found++;
+                int score = score(entry, terms) * weight;
+                Integer previous = scores.put(entry, score);
+                if (previous == null) {
+                    matches.add(entry);
+                } else if (previous > score) {
+                    scores.put(entry, previous);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether a text contains all the given strings.
+     *
+     * @param text    The text.
+     * @param needles The strings.
+     * @return true if each string is in the text.
+     */
+    private static boolean containsAll(String text, String[] needles) {
+        for (String needle : needles) {
+            if (!text.contains(needle)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds where an item goes in a list kept in the order of the index, after the items ranked equally.
+     *
+     * @param items The list.
+     * @param item  The item.
+     * @return The position of the first item after it.
+     */
+    private int insertionPoint(List<Entry<T>> items, T item) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.compare(items.get(middle).item, item) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Scores an item on the terms of a query.
+     *
+     * @param entry The item and its words.
+     * @param terms The folded terms.
+     * @return 0 if a term starts none of the words of the item, otherwise a higher score for whole-word and first-field matches.
+     */
+    private static int score(Entry<?> entry, String[] terms) {
+        int score = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (int i = 0; i < entry.words.length; i++) {
+                String word = entry.words[i];
+                if (word.startsWith(term)) {
+                    int wordScore = (word.length() == term.length() ? 2_000 : 1_000) - entry.fields[i];
+                    best = Math.max(best, wordScore);
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    /**
+     * Cuts a folded text into words.
+     *
+     * @param text The text, possibly null.
+     * @return The words.
+     */
+    private static String[] words(String text) {
+        String folded = fold(text).trim();
+        if (folded.isEmpty()) {
+            return new String[0];
+        }
+        return SEPARATORS.splitAsStream(folded).filter(word -> !word.isEmpty()).toArray(String[]::new);
+    }
+}
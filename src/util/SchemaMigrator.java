@@ -0,0 +1,214 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utility class applying the versioned SQL migrations of the database schema.
+ * <p>
+ * Migrations are the scripts {@code /db/migration/V<version>__<description>.sql} listed in
+ * {@link #MIGRATIONS}. Applied versions are recorded in the {@code schema_version} table, so each
+ * script runs once per database, in order.
+ * </p>
+ * <p>
+ * MySQL commits each DDL statement on its own, so a script that fails halfway leaves its first
+ * statements applied while its version is not recorded. The scripts are therefore written to be run
+ * again: tables are created with {@code IF NOT EXISTS}, and a {@code CREATE INDEX} is skipped when
+ * {@code information_schema.statistics} shows the index already exists, since MySQL has no
+ * {@code CREATE INDEX IF NOT EXISTS}.
+ * </p>
+ */
+public class SchemaMigrator {
+
+    /** The migration scripts, in the order they must be applied. */
+    private static final String[] MIGRATIONS = {
+        "V1__baseline.sql",
+        "V2__loan_indexes.sql",
+        "V3__book_metadata.sql",
+        "V4__user_name_index.sql",
+    };
+
+    private static final Pattern CREATE_INDEX = Pattern.compile("^CREATE\\s+INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Constructeur par défaut.
+     */
+    public SchemaMigrator() {
+        // Default constructor
+    }
+
+    /**
+     * Applies the migrations that have not been applied to the database yet.
+     *
+     * @return true if the schema is up to date, false if a migration failed.
+     */
+    public static boolean migrate() {
+        try (Connection conn = databaseManager.getConnection()) {
+            if (conn == null) {
+                return false;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INT NOT NULL PRIMARY KEY, "
+                        + "description VARCHAR(200) NOT NULL, "
+                        + "installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            }
+
+            Set<Integer> applied = appliedVersions(conn);
+            for (String script : MIGRATIONS) {
+                int version = versionOf(script);
+                if (applied.contains(version)) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                apply(conn, script);
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                    pstmt.setInt(1, version);
+                    pstmt.setString(2, descriptionOf(script));
+                    pstmt.executeUpdate();
+                }
+                System.out.println("Applied migration " + script + " in " + (System.currentTimeMillis() - start) + "ms");
+            }
+            return true;
+        } catch (SQLException | IOException e) {
+            System.err.println("Error migrating the database schema: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the highest version known by the application.
+     *
+     * @return The version of the last migration.
+     */
+    public static int latestVersion() {
+        return versionOf(MIGRATIONS[MIGRATIONS.length - 1]);
+    }
+
+    /**
+     * Reads the versions already applied.
+     *
+     * @param conn The connection to use.
+     * @return The applied versions.
+     * @throws SQLException if the query fails.
+     */
+    private static Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Executes every statement of a migration script.
+     *
+     * @param conn   The connection to use.
+     * @param script The script file name.
+     * @throws SQLException if a statement fails.
+     * @throws IOException  if the script cannot be read.
+     */
+    private static void apply(Connection conn, String script) throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : readStatements("/db/migration/" + script)) {
+                Matcher index = CREATE_INDEX.matcher(sql);
+                if (index.find() && indexExists(conn, index.group(2), index.group(1))) {
+                    System.out.println("Migration " + script + ": index " + index.group(1) + " already exists");
+                    continue;
+                }
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Tells whether an index exists in the current database.
+     *
+     * @param conn  The connection to use.
+     * @param table The table of the index.
+     * @param index The name of the index.
+     * @return true if the index exists.
+     * @throws SQLException if the query fails.
+     */
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, index);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Reads the statements of a script, ignoring comment lines. Statements end with a semicolon at the end of a line.
+     *
+     * @param resource The classpath resource of the script.
+     * @return The statements, without their semicolon.
+     * @throws IOException if the script is missing or cannot be read.
+     */
+    private static List<String> readStatements(String resource) throws IOException {
+        InputStream in = SchemaMigrator.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Migration script not found: " + resource);
+        }
+        List<String> statements = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            StringBuilder current = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    statements.add(current.substring(0, current.lastIndexOf(";")).trim());
+                    current.setLength(0);
+                }
+            }
+            if (current.toString().trim().length() > 0) {
+                statements.add(current.toString().trim());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Extracts the version from a script name such as {@code V2__loan_indexes.sql}.
+     *
+     * @param script The script file name.
+     * @return The version number.
+     */
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    /**
+     * Extracts the description from a script name such as {@code V2__loan_indexes.sql}.
+     *
+     * @param script The script file name.
+     * @return The description, with spaces instead of underscores.
+     */
+    private static String descriptionOf(String script) {
+        return script.substring(script.indexOf("__") + 2, script.lastIndexOf('.')).replace('_', ' ');
+    }
+}
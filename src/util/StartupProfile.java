@@ -0,0 +1,245 @@
+package util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Timing profile of the start of the application, to compare startups across releases and JVM settings.
+ * <p>
+ * Each phase of the startup is recorded with its start, counted from the start of the JVM, its
+ * duration and the thread that ran it, so the phases run in parallel can be told apart from the
+ * critical path. {@link #finish()} prints the profile and, if {@code cybook.startup.profile} names a
+ * CSV file, appends it to that file; nothing is written by default.
+ * Each line also gives the release ({@code cybook.version}, or the version of the jar), the storage
+ * and whether a class data sharing archive was given, so the file can hold the runs of several releases.
+ * Phases recorded after {@link #finish()} are ignored. The methods can be called from any thread.
+ * </p>
+ */
+public final class StartupProfile {
+
+    private static final String FILE = System.getProperty("cybook.startup.profile", "");
+    private static final String CSV_HEADER = "run,version,storage,cds,phase,start_ms,duration_ms,thread";
+
+    private static final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    private static final long jvmStartMillis = runtime.getStartTime();
+
+    // Guarded by the class
+    private static final List<Phase> phases = new ArrayList<>();
+    private static boolean finished;
+
+    private StartupProfile() {
+        // Static profile
+    }
+
+    /**
+     * A timed phase of the startup.
+     */
+    public static final class Phase {
+        private final String name;
+        private final long startMillis;
+        private final long durationMillis;
+        private final String thread;
+
+        Phase(String name, long startMillis, long durationMillis, String thread) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.thread = thread;
+        }
+
+        /**
+         * Gets the name of the phase.
+         *
+         * @return The name of the phase.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the start of the phase.
+         *
+         * @return The milliseconds between the start of the JVM and the start of the phase.
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * Gets the duration of the phase.
+         *
+         * @return The duration in milliseconds, 0 for a milestone.
+         */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * Gets the thread that ran the phase.
+         *
+         * @return The name of the thread.
+         */
+        public String getThread() {
+            return thread;
+        }
+    }
+
+    /**
+     * Gets the time elapsed since the start of the JVM.
+     *
+     * @return The elapsed time in milliseconds.
+     */
+    public static long now() {
+        return System.currentTimeMillis() - jvmStartMillis;
+    }
+
+    /**
+     * Records a phase that ran on the current thread.
+     *
+     * @param name        The name of the phase.
+     * @param startMillis The start of the phase, as given by {@link #now()}.
+     */
+    public static void record(String name, long startMillis) {
+        long end = now();
+        synchronized (StartupProfile.class) {
+            if (!finished) {
+                phases.add(new Phase(name, startMillis, end - startMillis, Thread.currentThread().getName()));
+            }
+        }
+    }
+
+    /**
+     * Records a milestone, a phase without duration, such as the window becoming usable.
+     *
+     * @param name The name of the milestone.
+     */
+    public static void mark(String name) {
+        record(name, now());
+    }
+
+    /**
+     * Runs a phase and records it, even if it fails.
+     *
+     * @param name The name of the phase.
+     * @param step The phase.
+     */
+    public static void time(String name, Runnable step) {
+        long start = now();
+        try {
+            step.run();
+        } finally {
+            record(name, start);
+        }
+    }
+
+    /**
+     * Runs a phase that gives a result and records it, even if it fails.
+     *
+     * @param <T>  The type of the result.
+     * @param name The name of the phase.
+     * @param step The phase.
+     * @return The result of the phase.
+     */
+    public static <T> T time(String name, Supplier<T> step) {
+        long start = now();
+        try {
+            return step.get();
+        } finally {
+            record(name, start);
+        }
+    }
+
+    /**
+     * Gets the phases recorded so far, by start time.
+     *
+     * @return A copy of the phases.
+     */
+    public static synchronized List<Phase> getPhases() {
+        List<Phase> copy = new ArrayList<>(phases);
+        copy.sort(Comparator.comparingLong(Phase::getStartMillis));
+        return copy;
+    }
+
+    /**
+     * Ends the profile, prints it and appends it to the CSV file. Only the first call has an effect.
+     */
+    public static void finish() {
+        synchronized (StartupProfile.class) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+        }
+        List<Phase> profile = getPhases();
+        StringBuilder report = new StringBuilder("Startup profile (ms since JVM start):\n");
+        for (Phase phase : profile) {
+            report.append(String.format("  %-28s start %6d  duration %6d  %s%n",
+                    phase.getName(), phase.getStartMillis(), phase.getDurationMillis(), phase.getThread()));
+        }
+        System.out.print(report);
+        if (!FILE.isEmpty()) {
+            writeCsv(Paths.get(FILE), profile);
+        }
+    }
+
+    /**
+     * Appends the phases of this run to a CSV file, with a header if the file is new.
+     *
+     * @param file    The CSV file.
+     * @param profile The phases.
+     */
+    private static void writeCsv(Path file, List<Phase> profile) {
+        String run = Instant.ofEpochMilli(jvmStartMillis).toString();
+        String prefix = run + "," + version() + "," + System.getProperty("cybook.storage", "mysql") + "," + usesCds() + ",";
+        boolean newFile = !Files.exists(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newFile) {
+                out.write(CSV_HEADER + "\n");
+            }
+            for (Phase phase : profile) {
+                out.write(prefix + phase.getName() + "," + phase.getStartMillis() + "," + phase.getDurationMillis() + "," + phase.getThread() + "\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing the startup profile to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the release being profiled.
+     *
+     * @return The value of {@code cybook.version}, else the version of the jar, else "dev".
+     */
+    private static String version() {
+        String version = System.getProperty("cybook.version");
+        if (version == null) {
+            version = StartupProfile.class.getPackage().getImplementationVersion();
+        }
+        return version != null ? version : "dev";
+    }
+
+    /**
+     * Tells whether the JVM was started with a class data sharing archive of the application.
+     *
+     * @return true if {@code -XX:SharedArchiveFile} was given.
+     */
+    private static boolean usesCds() {
+        for (String argument : runtime.getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
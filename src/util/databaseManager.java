@@ -1,21 +1,40 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 /**
  * Utility class for managing database connections.
- * It provides a method to get a connection to the MySQL database.
+ * It provides a method to get a connection to the MySQL database from a shared connection pool.
+ * <p>
+ * The connection settings can be overridden with the system properties {@code cybook.db.url},
+ * {@code cybook.db.user}, {@code cybook.db.password}, {@code cybook.db.pool.max} and
+ * {@code cybook.db.pool.minIdle}. Connections use server-side prepared statements, which the pool
+ * keeps open in a per-connection cache of {@code cybook.db.pool.statementCacheSize} statements.
+ * </p>
  */
 public class databaseManager {
+
+    private static final String URL = System.getProperty("cybook.db.url", "jdbc:mysql://localhost:3306/cybook");
+    private static final String USER = System.getProperty("cybook.db.user", "root");
+    private static final String PASSWORD = System.getProperty("cybook.db.password", "alex");
+    private static final int POOL_MAX_SIZE = Integer.getInteger("cybook.db.pool.max", 10);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("cybook.db.pool.minIdle", 2);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("cybook.db.pool.statementCacheSize", 64);
+    private static final long BORROW_TIMEOUT_MILLIS = 5_000;
+    private static final long IDLE_TIMEOUT_MILLIS = 10 * 60_000;
+    private static final long VALIDATION_THRESHOLD_MILLIS = 1_000;
+
+    private static final ConnectionPool pool;
+
 	/**
      * Constructeur par défaut.
      */
     public databaseManager() {
         // Default constructor
     }
-	
+
     static {
         try {
             // Load the MySQL JDBC driver
@@ -24,20 +43,48 @@ public class databaseManager {
             System.err.println("Failed to load JDBC driver");
             e.printStackTrace();
         }
+        Properties properties = new Properties();
+        properties.setProperty("user", USER);
+        properties.setProperty("password", PASSWORD);
+        // Prepare statements on the server so cached statements skip the parse on each execution
+        properties.setProperty("useServerPrepStmts", "true");
+        // Send JDBC batches as multi-row statements
+        properties.setProperty("rewriteBatchedStatements", "true");
+        // Read results through a server-side cursor when a statement sets a fetch size
+        properties.setProperty("useCursorFetch", "true");
+        pool = new ConnectionPool(URL, properties, POOL_MAX_SIZE, POOL_MIN_IDLE,
+                BORROW_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, VALIDATION_THRESHOLD_MILLIS, STATEMENT_CACHE_SIZE);
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "cybook-pool-shutdown"));
     }
 
     /**
-     * Gets a connection to the MySQL database.
+     * Gets a connection to the MySQL database from the connection pool.
+     * Closing the returned connection gives it back to the pool.
      *
      * @return A Connection object to the MySQL database, or null if a connection could not be established.
      */
     public static Connection getConnection() {
         try {
-            // Establish a connection to the database
-            return DriverManager.getConnection("jdbc:mysql://localhost:3306/cybook", "root", "alex");
+            return pool.borrow();
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Opens the minimum number of idle connections so the first queries do not pay the connection handshake.
+     */
+    public static void warmUp() {
+        pool.warmUp();
+    }
+
+    /**
+     * Gets the shared connection pool, mainly to read its statistics.
+     *
+     * @return The connection pool.
+     */
+    public static ConnectionPool getPool() {
+        return pool;
+    }
 }